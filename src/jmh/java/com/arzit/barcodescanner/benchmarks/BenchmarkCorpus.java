@@ -0,0 +1,55 @@
+package com.arzit.barcodescanner.benchmarks;
+
+import com.arzit.barcodescanner.services.PDF417Symbols;
+import org.opencv.core.*;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Synthetic PDF417 scenes around {@link PDF417Symbols}, so benchmarks need no image files.
+ * <p>
+ * A symbol about a third of the frame wide is drawn on a white page, rotated about the centre,
+ * softened like a camera capture and overlaid with Gaussian sensor noise.
+ */
+final class BenchmarkCorpus {
+
+    static final String PAYLOAD = "@\n\u001e\rANSI 636014040002DL00410288ZC03290015DLDAQD1234562\nDCSPUBLIC\nDACJOHN\nDBB01011990";
+
+    private BenchmarkCorpus() {
+    }
+
+    /**
+     * @param resolution  frame size as {@code WIDTHxHEIGHT}
+     * @param rotation    rotation of the whole scene in degrees
+     * @param noiseSigma  standard deviation of the additive noise, in gray levels
+     */
+    static Mat scene(String resolution, double rotation, double noiseSigma) {
+        String[] size = resolution.split("x");
+        int width = Integer.parseInt(size[0]);
+        int height = Integer.parseInt(size[1]);
+
+        Mat page = new Mat(height, width, CvType.CV_8UC1, new Scalar(255));
+        Mat symbol = PDF417Symbols.render(PAYLOAD, width / 3, width / 9);
+        int x = (width - symbol.cols()) / 2;
+        int y = (height - symbol.rows()) / 2;
+        symbol.copyTo(page.submat(new Rect(x, y, symbol.cols(), symbol.rows())));
+        symbol.release();
+
+        if (rotation != 0) {
+            Mat rotated = new Mat();
+            Mat matrix = Imgproc.getRotationMatrix2D(new Point(width / 2.0, height / 2.0), rotation, 1);
+            Imgproc.warpAffine(page, rotated, matrix, page.size(), Imgproc.INTER_LINEAR, Core.BORDER_CONSTANT, new Scalar(255));
+            page.release();
+            matrix.release();
+            page = rotated;
+        }
+
+        Imgproc.GaussianBlur(page, page, new Size(3, 3), 0);
+        if (noiseSigma > 0) {
+            Mat noise = new Mat(page.size(), CvType.CV_8UC1);
+            Core.randn(noise, 128, noiseSigma);
+            Core.addWeighted(page, 1, noise, 1, -128, page);
+            noise.release();
+        }
+        return page;
+    }
+}
@@ -0,0 +1,64 @@
+package com.arzit.barcodescanner.benchmarks;
+
+import com.arzit.barcodescanner.services.Binarization;
+import com.arzit.barcodescanner.services.MatLuminanceSource;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.pdf417.PDF417Reader;
+import nu.pattern.OpenCV;
+import org.opencv.core.Mat;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ZXing's HybridBinarizer against the Mat-based adaptive and integral binarizers, over the same
+ * generated scenes: thresholding alone, and a full PDF417 decode. Decodes that fail return null,
+ * so the GC profiler also shows which binarizers still read each scene.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BinarizerBenchmarks {
+
+    @Param({"HYBRID", "ADAPTIVE", "INTEGRAL"})
+    Binarization binarization;
+
+    @Param({"640x480", "1920x1080", "4000x3000"})
+    String resolution;
+
+    @Param({"0", "30"})
+    double noise;
+
+    private final PDF417Reader reader = new PDF417Reader();
+    private Mat gray;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        OpenCV.loadLocally();
+        gray = BenchmarkCorpus.scene(resolution, 0, noise);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        gray.release();
+    }
+
+    @Benchmark
+    public BitMatrix binarize() throws NotFoundException {
+        return binarization.create(new MatLuminanceSource(gray)).getBlackMatrix();
+    }
+
+    @Benchmark
+    public String decode() {
+        try {
+            return reader.decode(new BinaryBitmap(binarization.create(new MatLuminanceSource(gray)))).getText();
+        } catch (Exception e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.arzit.barcodescanner.benchmarks;
+
+import com.arzit.barcodescanner.services.MatLuminanceSource;
+import com.arzit.barcodescanner.services.PDF417Symbols;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.MultiFormatReader;
+import com.google.zxing.client.j2se.BufferedImageLuminanceSource;
+import com.google.zxing.common.HybridBinarizer;
+import nu.pattern.OpenCV;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.openjdk.jmh.annotations.*;
+
+import javax.imageio.ImageIO;
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-decode cost of the former JPEG round trip (imencode + ImageIO.read) against reading the
+ * Mat directly through {@link MatLuminanceSource}.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LuminanceSourceBenchmarks {
+
+    private Mat symbol;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        OpenCV.loadLocally();
+        symbol = PDF417Symbols.render(BenchmarkCorpus.PAYLOAD, 1200, 480);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        symbol.release();
+    }
+
+    @Benchmark
+    public String jpegRoundTrip() throws Exception {
+        MatOfByte encoded = new MatOfByte();
+        Imgcodecs.imencode(".jpg", symbol, encoded);
+        LuminanceSource source = new BufferedImageLuminanceSource(ImageIO.read(new ByteArrayInputStream(encoded.toArray())));
+        encoded.release();
+        return new MultiFormatReader().decode(new BinaryBitmap(new HybridBinarizer(source))).getText();
+    }
+
+    @Benchmark
+    public String matLuminanceSource() throws Exception {
+        LuminanceSource source = new MatLuminanceSource(symbol);
+        return new MultiFormatReader().decode(new BinaryBitmap(new HybridBinarizer(source))).getText();
+    }
+}
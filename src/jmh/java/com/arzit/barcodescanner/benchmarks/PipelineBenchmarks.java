@@ -0,0 +1,112 @@
+package com.arzit.barcodescanner.benchmarks;
+
+import com.arzit.barcodescanner.services.BarcodeLocator;
+import com.arzit.barcodescanner.services.ImageIngestionService;
+import com.arzit.barcodescanner.services.Orientation;
+import com.arzit.barcodescanner.services.PDF417BarcodeDetector;
+import com.arzit.barcodescanner.services.PDF417Decoder;
+import nu.pattern.OpenCV;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Every stage of the decode pipeline in isolation, over generated scenes of several resolutions,
+ * rotations and noise levels. Run with the GC profiler (the profile default) for allocation rates.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PipelineBenchmarks {
+
+    @Param({"640x480", "1920x1080", "4000x3000"})
+    String resolution;
+
+    @Param({"0", "90", "12"})
+    double rotation;
+
+    @Param({"0", "12", "30"})
+    double noise;
+
+    private final ImageIngestionService ingestion = new ImageIngestionService();
+    private final BarcodeLocator locator = new BarcodeLocator();
+    private final PDF417Decoder decoder = new PDF417Decoder();
+
+    private byte[] jpeg;
+    private Mat gray;
+    private Mat candidate;
+    private BufferedImage image;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        OpenCV.loadLocally();
+        gray = BenchmarkCorpus.scene(resolution, rotation, noise);
+
+        MatOfByte encoded = new MatOfByte();
+        Imgcodecs.imencode(".jpg", gray, encoded);
+        jpeg = encoded.toArray();
+        encoded.release();
+
+        image = ImageIO.read(new ByteArrayInputStream(jpeg));
+        List<Mat> candidates = locator.cropImageBarcode(gray);
+        candidate = candidates.isEmpty() ? gray : candidates.get(0);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        gray.release();
+    }
+
+    @Benchmark
+    public void convertMultipartFileToMat(Blackhole blackhole) {
+        Mat mat = ingestion.decode(jpeg);
+        blackhole.consume(mat.rows());
+        mat.release();
+    }
+
+    @Benchmark
+    public void cropImageBarcode(Blackhole blackhole) {
+        for (Mat region : locator.cropImageBarcode(gray)) {
+            blackhole.consume(region.rows());
+            region.release();
+        }
+    }
+
+    @Benchmark
+    public void rotate90ACW(Blackhole blackhole) {
+        Mat rotated = new Mat();
+        decoder.rotate90ACW(candidate, rotated);
+        blackhole.consume(rotated.rows());
+        rotated.release();
+    }
+
+    @Benchmark
+    public void deskew(Blackhole blackhole) {
+        Mat straightened = new Mat();
+        Orientation.straighten(candidate, Orientation.estimateSkew(candidate), straightened);
+        blackhole.consume(straightened.rows());
+        straightened.release();
+    }
+
+    @Benchmark
+    public String decodePDF417() {
+        return decoder.decodePDF417(gray);
+    }
+
+    @Benchmark
+    public BufferedImage detectPDF417Region() {
+        return PDF417BarcodeDetector.detectPDF417Region(image);
+    }
+}
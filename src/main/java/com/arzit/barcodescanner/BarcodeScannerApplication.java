@@ -1,11 +1,17 @@
 package com.arzit.barcodescanner;
 
+import nu.pattern.OpenCV;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 
 @SpringBootApplication
 public class BarcodeScannerApplication {
 
+	static {
+		// Eagerly, before any bean or request touches a Mat
+		OpenCV.loadLocally();
+	}
+
 	public static void main(String[] args) {
 		SpringApplication.run(BarcodeScannerApplication.class, args);
 	}
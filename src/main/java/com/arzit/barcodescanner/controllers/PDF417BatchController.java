@@ -0,0 +1,166 @@
+package com.arzit.barcodescanner.controllers;
+
+import com.arzit.barcodescanner.services.BatchDecodePipeline;
+import com.arzit.barcodescanner.services.BatchDecodePipeline.BatchItem;
+import com.arzit.barcodescanner.services.BatchDecodePipeline.BatchResult;
+import com.arzit.barcodescanner.services.JobRejectedException;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+@RestController
+@RequestMapping("/api/pdf417")
+public class PDF417BatchController {
+
+    private static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+
+    @Autowired
+    BatchDecodePipeline batchDecodePipeline;
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @Value("${barcode.batch.max-items:1000}")
+    int maxItems;
+
+    @Value("${barcode.upload.max-bytes:20971520}")
+    long maxEntryBytes;
+
+    // Total uncompressed bytes accepted per batch, guarding against ZIP bombs
+    @Value("${barcode.batch.max-bytes:268435456}")
+    long maxBatchBytes;
+
+    @Value("${barcode.batch.timeout-ms:600000}")
+    long timeoutMs;
+
+    /**
+     * Decodes several images, given as multiple "file" parts or one ZIP archive, and streams one
+     * NDJSON line per image in completion order. Answers 429 with Retry-After when the images
+     * buffered by all batches already fill the pipeline's byte budget.
+     */
+    @PostMapping("/decode/batch")
+    public ResponseEntity<ResponseBodyEmitter> decodeBatch(@RequestParam("file") List<MultipartFile> files) throws IOException {
+        List<BatchItem> items = new ArrayList<>();
+        // Every byte is reserved before it is buffered, and returned if the batch is not submitted
+        long[] totalBytes = {0};
+        try {
+            collectItems(files, items, totalBytes);
+        } catch (IOException e) {
+            batchDecodePipeline.release(totalBytes[0]);
+            return badRequest("Error reading the batch: " + e.getMessage());
+        } catch (JobRejectedException e) {
+            batchDecodePipeline.release(totalBytes[0]);
+            ResponseBodyEmitter emitter = new ResponseBodyEmitter();
+            emitter.send(e.getMessage(), MediaType.TEXT_PLAIN);
+            emitter.complete();
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).contentType(MediaType.TEXT_PLAIN)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                    .body(emitter);
+        }
+        if (items.isEmpty()) {
+            batchDecodePipeline.release(totalBytes[0]);
+            return badRequest("No images in the batch.");
+        }
+
+        ResponseBodyEmitter emitter = new ResponseBodyEmitter(timeoutMs);
+        batchDecodePipeline.submit(items, result -> send(emitter, result), emitter::complete);
+        return ResponseEntity.ok().contentType(NDJSON).body(emitter);
+    }
+
+    private static ResponseEntity<ResponseBodyEmitter> badRequest(String message) throws IOException {
+        // The handler's return type is fixed to the emitter, so plain-text errors go through one too
+        ResponseBodyEmitter emitter = new ResponseBodyEmitter();
+        emitter.send(message, MediaType.TEXT_PLAIN);
+        emitter.complete();
+        return ResponseEntity.badRequest().contentType(MediaType.TEXT_PLAIN).body(emitter);
+    }
+
+    private void send(ResponseBodyEmitter emitter, BatchResult result) {
+        try {
+            String line = objectMapper.writeValueAsString(result) + "\n";
+            // Results arrive from several pipeline threads; lines must not interleave
+            synchronized (emitter) {
+                emitter.send(line, MediaType.TEXT_PLAIN);
+            }
+        } catch (IOException | IllegalStateException e) {
+            // Client went away; the remaining results are dropped
+        }
+    }
+
+    private void collectItems(List<MultipartFile> files, List<BatchItem> items, long[] totalBytes) throws IOException {
+        if (files.size() == 1 && isZip(files.get(0))) {
+            try (ZipInputStream zip = new ZipInputStream(files.get(0).getInputStream())) {
+                ZipEntry entry;
+                while ((entry = zip.getNextEntry()) != null) {
+                    if (!entry.isDirectory()) {
+                        checkItemCount(items);
+                        items.add(new BatchItem(items.size(), entry.getName(), readEntry(zip, entry.getName(), totalBytes)));
+                    }
+                }
+            }
+            return;
+        }
+        for (MultipartFile file : files) {
+            checkItemCount(items);
+            reserve(totalBytes, file.getSize());
+            items.add(new BatchItem(items.size(), file.getOriginalFilename(), file.getBytes()));
+        }
+    }
+
+    private void checkItemCount(List<BatchItem> items) throws IOException {
+        if (items.size() >= maxItems) {
+            throw new IOException("more than " + maxItems + " images");
+        }
+    }
+
+    /**
+     * Counts {@code bytes} against the batch limit, then reserves them from the budget shared by
+     * all batches.
+     */
+    private void reserve(long[] totalBytes, long bytes) throws IOException {
+        if (totalBytes[0] + bytes > maxBatchBytes) {
+            throw new IOException("batch exceeds the limit of " + maxBatchBytes + " bytes");
+        }
+        if (!batchDecodePipeline.reserve(bytes)) {
+            throw new JobRejectedException("Too many images buffered by batches in progress, retry later.", 1);
+        }
+        totalBytes[0] += bytes;
+    }
+
+    private byte[] readEntry(InputStream zip, String name, long[] totalBytes) throws IOException {
+        // Entry sizes in the ZIP header are not trustworthy, so the limits are enforced while reading
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] chunk = new byte[64 * 1024];
+        int read;
+        while ((read = zip.read(chunk)) != -1) {
+            if (out.size() + read > maxEntryBytes) {
+                throw new IOException(name + " exceeds the limit of " + maxEntryBytes + " bytes");
+            }
+            reserve(totalBytes, read);
+            out.write(chunk, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    private static boolean isZip(MultipartFile file) {
+        String name = file.getOriginalFilename();
+        return "application/zip".equals(file.getContentType())
+                || "application/x-zip-compressed".equals(file.getContentType())
+                || (name != null && name.toLowerCase().endsWith(".zip"));
+    }
+}
@@ -0,0 +1,43 @@
+package com.arzit.barcodescanner.controllers;
+
+import com.arzit.barcodescanner.services.DocumentScanService;
+import com.arzit.barcodescanner.services.DocumentScanService.DocumentResult;
+import com.arzit.barcodescanner.services.ImageIngestionService;
+import com.arzit.barcodescanner.services.ImageRejectedException;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+
+@RestController
+@RequestMapping("/api/pdf417")
+public class PDF417DocumentController {
+
+    @Autowired
+    DocumentScanService documentScanService;
+    @Autowired
+    ImageIngestionService imageIngestionService;
+
+    /**
+     * Decodes every page of a PDF or multi-page TIFF and answers with one result per scanned page.
+     * With {@code stopAfter} set, no further pages are rasterized once that many barcodes are found.
+     */
+    @PostMapping("/decode/document")
+    public ResponseEntity<?> decodeDocument(@RequestParam("file") MultipartFile file,
+                                            @RequestParam(value = "stopAfter", defaultValue = "0") int stopAfter) {
+        try {
+            byte[] upload = imageIngestionService.read(file);
+            DocumentResult result = documentScanService.scan(upload, Math.max(0, stopAfter));
+            return ResponseEntity.ok(result);
+
+        } catch (ImageRejectedException e) {
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).body(e.getMessage());
+        } catch (IOException e) {
+            return ResponseEntity.badRequest().body("Failed to process the document: " + e.getMessage());
+        }
+    }
+}
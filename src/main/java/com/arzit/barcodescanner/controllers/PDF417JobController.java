@@ -0,0 +1,60 @@
+package com.arzit.barcodescanner.controllers;
+
+import com.arzit.barcodescanner.services.DecodeJobService;
+import com.arzit.barcodescanner.services.DecodeJobService.JobView;
+import com.arzit.barcodescanner.services.ImageIngestionService;
+import com.arzit.barcodescanner.services.ImageRejectedException;
+import com.arzit.barcodescanner.services.JobRejectedException;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.net.URI;
+
+@RestController
+@RequestMapping("/api/pdf417")
+public class PDF417JobController {
+
+    @Autowired
+    DecodeJobService decodeJobService;
+    @Autowired
+    ImageIngestionService imageIngestionService;
+
+    /**
+     * Queues a decode and answers 202 with the job id at once; the result is polled from the
+     * returned location or POSTed to {@code callbackUrl}. Answers 429 with Retry-After when saturated.
+     */
+    @PostMapping("/jobs")
+    public ResponseEntity<?> submitJob(@RequestParam("file") MultipartFile file,
+                                       @RequestParam(value = "callbackUrl", required = false) String callbackUrl,
+                                       @RequestParam(value = "deadlineMs", required = false) Long deadlineMs) {
+        try {
+            URI callback = callbackUrl != null ? decodeJobService.callbackUri(callbackUrl) : null;
+            // Admitted on the declared size; only then is the upload read into the heap
+            JobView job = decodeJobService.submit(file.getSize(), () -> imageIngestionService.read(file), deadlineMs, callback);
+            return ResponseEntity.accepted().location(URI.create("/api/pdf417/jobs/" + job.id())).body(job);
+
+        } catch (JobRejectedException e) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                    .body(e.getMessage());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (ImageRejectedException e) {
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).body(e.getMessage());
+        } catch (IOException e) {
+            return ResponseEntity.status(500).body("Error processing the image: " + e.getMessage());
+        }
+    }
+
+    @GetMapping("/jobs/{id}")
+    public ResponseEntity<JobView> getJob(@PathVariable("id") String id) {
+        JobView job = decodeJobService.get(id);
+        return job != null ? ResponseEntity.ok(job) : ResponseEntity.notFound().build();
+    }
+}
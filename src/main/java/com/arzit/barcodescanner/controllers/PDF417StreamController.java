@@ -0,0 +1,73 @@
+package com.arzit.barcodescanner.controllers;
+
+import com.arzit.barcodescanner.services.FrameStreamService;
+import com.arzit.barcodescanner.services.FrameStreamService.Session;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+
+import java.io.IOException;
+import java.util.concurrent.RejectedExecutionException;
+
+@RestController
+@RequestMapping("/api/pdf417")
+public class PDF417StreamController {
+
+    private static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+
+    @Autowired
+    FrameStreamService frameStreamService;
+    @Autowired
+    ObjectMapper objectMapper;
+
+    // Longest a single stream may stay open
+    @Value("${barcode.stream.timeout-ms:3600000}")
+    long timeoutMs;
+
+    /**
+     * Decodes a live MJPEG stream ({@code multipart/x-mixed-replace} or concatenated JPEGs) sent as
+     * one long request body. Answers with an NDJSON line per newly seen symbol while the body is
+     * still arriving, and a line of totals once it ends. Frames the decoder cannot keep up with are
+     * skipped.
+     */
+    @PostMapping("/decode/stream")
+    public ResponseEntity<ResponseBodyEmitter> decodeStream(HttpServletRequest request) throws IOException {
+        ResponseBodyEmitter emitter = new ResponseBodyEmitter(timeoutMs);
+        Session session;
+        try {
+            session = frameStreamService.stream(request.getInputStream(), event -> send(emitter, event),
+                    summary -> {
+                        send(emitter, summary);
+                        emitter.complete();
+                    });
+        } catch (RejectedExecutionException e) {
+            ResponseBodyEmitter busy = new ResponseBodyEmitter();
+            busy.send("Too many open streams, retry later.", MediaType.TEXT_PLAIN);
+            busy.complete();
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).contentType(MediaType.TEXT_PLAIN).body(busy);
+        }
+        // Timed out or the client went away: stop reading and decoding
+        emitter.onTimeout(session::close);
+        emitter.onError(error -> session.close());
+        return ResponseEntity.ok().contentType(NDJSON).body(emitter);
+    }
+
+    private void send(ResponseBodyEmitter emitter, Object line) {
+        try {
+            String json = objectMapper.writeValueAsString(line) + "\n";
+            // Events come from a decode thread, the totals from the reader thread
+            synchronized (emitter) {
+                emitter.send(json, MediaType.TEXT_PLAIN);
+            }
+        } catch (IOException | IllegalStateException e) {
+            // Client went away; the remaining lines are dropped
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.arzit.barcodescanner.metrics;
+
+import com.arzit.barcodescanner.services.BarcodeLocator;
+import com.arzit.barcodescanner.services.ImageIngestionService;
+import com.arzit.barcodescanner.services.MatScope;
+import com.arzit.barcodescanner.services.TiledImageScanner;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Reports native (off-heap) memory held by OpenCV Mats, which the JVM heap metrics cannot see.
+ * <p>
+ * {@code barcode.native.live.bytes} is tagged by area: request scopes still open, idle pooled
+ * locator scratch, and pooled ingestion staging buffers. {@code barcode.large.reserved.bytes}
+ * is the part of the large-image memory budget held by tile reads in flight (heap and native).
+ */
+@Component
+public class NativeMemoryMetrics implements MeterBinder {
+
+    @Autowired
+    BarcodeLocator barcodeLocator;
+    @Autowired
+    ImageIngestionService imageIngestionService;
+    @Autowired
+    TiledImageScanner tiledImageScanner;
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("barcode.native.live.bytes", MatScope::liveBytes)
+                .tag("area", "scopes")
+                .baseUnit("bytes")
+                .description("Native bytes held by Mats of requests in flight")
+                .register(registry);
+        Gauge.builder("barcode.native.live.bytes", barcodeLocator, BarcodeLocator::pooledScratchBytes)
+                .tag("area", "scratch")
+                .baseUnit("bytes")
+                .description("Native bytes held by idle pooled locator scratch Mats")
+                .register(registry);
+        Gauge.builder("barcode.native.live.bytes", imageIngestionService, ImageIngestionService::stagingBytes)
+                .tag("area", "staging")
+                .baseUnit("bytes")
+                .description("Native bytes held by pooled upload staging buffers")
+                .register(registry);
+        Gauge.builder("barcode.large.reserved.bytes", tiledImageScanner, TiledImageScanner::reservedBytes)
+                .baseUnit("bytes")
+                .description("Memory reserved by large-image tile reads in flight")
+                .register(registry);
+        Gauge.builder("barcode.native.open.scopes", MatScope::openScopes)
+                .description("Mat scopes not yet closed")
+                .register(registry);
+    }
+}
@@ -0,0 +1,263 @@
+package com.arzit.barcodescanner.metrics;
+
+import com.arzit.barcodescanner.services.ScanResult;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Stage timings and decode attribution for the scan pipeline.
+ * <p>
+ * Every stage is a Micrometer {@link Observation}, so the same call produces a timer (and an
+ * active-task gauge) in the meter registry and, when a tracing bridge is present, a span whose
+ * parent is the scan it belongs to. Stages running on worker threads are given their parent
+ * explicitly.
+ * <ul>
+ *     <li>{@code barcode.scan}: one scan, tagged by endpoint and outcome</li>
+ *     <li>{@code barcode.stage}: tagged by stage (ingest, locate, decode, rotate, ocr), decode path
+ *     (the decode strategy's name, multi for multi-symbol scans, or tracked for the boxes
+ *     followed across video frames) and outcome, which attributes successes to a path</li>
+ *     <li>{@code barcode.image.pixels}, {@code barcode.image.upload.bytes}: size histograms</li>
+ *     <li>{@code barcode.scan.in.flight}: scans currently running, per endpoint</li>
+ * </ul>
+ * Tag keys are identical for every meter of a name, as Prometheus requires.
+ */
+@Component
+public class ScanMetrics {
+
+    public static final String INGEST = "ingest";
+    public static final String LOCATE = "locate";
+    public static final String DECODE = "decode";
+    public static final String ROTATE = "rotate";
+    public static final String OCR = "ocr";
+
+    public static final String FULL_FRAME = "full-frame";
+    public static final String CANDIDATE = "candidate";
+    public static final String DESKEWED = "deskewed";
+    public static final String INVERTED = "inverted";
+    public static final String GLOBAL_HISTOGRAM = "global-histogram";
+    public static final String MULTI = "multi";
+    public static final String TRACKED = "tracked";
+    private static final String NO_PATH = "none";
+
+    public static final String SUCCESS = "success";
+    public static final String FAILURE = "failure";
+
+    @Autowired
+    ObservationRegistry observationRegistry = ObservationRegistry.NOOP;
+    // A composite without children records nothing
+    @Autowired
+    MeterRegistry meterRegistry = new CompositeMeterRegistry();
+
+    private final Map<String, AtomicInteger> inFlight = new ConcurrentHashMap<>();
+    // Raised while scans that are not traffic run, such as the warm-up before readiness
+    private volatile boolean suspended;
+    private DistributionSummary imagePixels;
+    private DistributionSummary uploadBytes;
+
+    /**
+     * Metrics that record nowhere, for services constructed outside the application context.
+     */
+    public static ScanMetrics noop() {
+        return of(ObservationRegistry.NOOP, new CompositeMeterRegistry());
+    }
+
+    public static ScanMetrics of(ObservationRegistry observationRegistry, MeterRegistry meterRegistry) {
+        ScanMetrics metrics = new ScanMetrics();
+        metrics.observationRegistry = observationRegistry;
+        metrics.meterRegistry = meterRegistry;
+        metrics.register();
+        return metrics;
+    }
+
+    @PostConstruct
+    void register() {
+        imagePixels = DistributionSummary.builder("barcode.image.pixels")
+                .description("Decoded image size in pixels")
+                .publishPercentileHistogram()
+                .minimumExpectedValue(1e4)
+                .maximumExpectedValue(1e8)
+                .register(meterRegistry);
+        uploadBytes = DistributionSummary.builder("barcode.image.upload.bytes")
+                .description("Encoded upload size")
+                .baseUnit("bytes")
+                .publishPercentileHistogram()
+                .minimumExpectedValue(1e3)
+                .maximumExpectedValue(1e8)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Runs {@code work} without recording any scan, stage or image size, on any thread, until it
+     * returns. Meant for the warm-up, which runs before the application takes traffic.
+     */
+    public <T> T unrecorded(Supplier<T> work) {
+        suspended = true;
+        try {
+            return work.get();
+        } finally {
+            suspended = false;
+        }
+    }
+
+    /**
+     * Starts the observation of one scan; stages started while it is in scope become its children.
+     */
+    public Observation startScan(String endpoint) {
+        AtomicInteger counter = inFlight.computeIfAbsent(endpoint, e -> meterRegistry.gauge(
+                "barcode.scan.in.flight", Tags.of("endpoint", e), new AtomicInteger()));
+        counter.incrementAndGet();
+        return Observation.createNotStarted("barcode.scan", observationRegistry)
+                .lowCardinalityKeyValue("endpoint", endpoint)
+                .start();
+    }
+
+    /**
+     * Stops a scan observation; {@code error} is null for a decode, otherwise the scan's error.
+     */
+    public void stopScan(Observation scan, String endpoint, String error) {
+        scan.lowCardinalityKeyValue("outcome", outcome(error));
+        scan.stop();
+        inFlight.get(endpoint).decrementAndGet();
+    }
+
+    /**
+     * Runs a whole scan inside its observation.
+     */
+    // The scope is held open around the work, never referenced
+    @SuppressWarnings("try")
+    public <T> T scan(String endpoint, Supplier<T> work, Function<T, String> error) {
+        if (suspended) {
+            return work.get();
+        }
+        Observation scan = startScan(endpoint);
+        String failure = null;
+        try (Observation.Scope scope = scan.openScope()) {
+            T result = work.get();
+            failure = error.apply(result);
+            return result;
+        } catch (RuntimeException e) {
+            scan.error(e);
+            failure = e.getClass().getSimpleName();
+            throw e;
+        } finally {
+            stopScan(scan, endpoint, failure);
+        }
+    }
+
+    /**
+     * Runs {@code task} with {@code observation} as the current observation, for hand-offs
+     * between threads.
+     */
+    // The scope is held open around the work, never referenced
+    @SuppressWarnings("try")
+    public Runnable scoped(Observation observation, Runnable task) {
+        if (observation == null) {
+            return task;
+        }
+        return () -> {
+            try (Observation.Scope scope = observation.openScope()) {
+                task.run();
+            }
+        };
+    }
+
+    public Observation currentObservation() {
+        return observationRegistry.getCurrentObservation();
+    }
+
+    /**
+     * Times a non-decode stage. The outcome is a success unless {@code failed} says otherwise.
+     */
+    // The scope is held open around the work, never referenced
+    @SuppressWarnings("try")
+    public <T> T stage(String stage, Observation parent, Supplier<T> work, Predicate<T> failed) {
+        Observation observation = stageObservation(stage, NO_PATH, parent);
+        String outcome = FAILURE;
+        try (Observation.Scope scope = observation.openScope()) {
+            T result = work.get();
+            outcome = failed.test(result) ? FAILURE : SUCCESS;
+            return result;
+        } catch (RuntimeException e) {
+            observation.error(e);
+            throw e;
+        } finally {
+            observation.lowCardinalityKeyValue("outcome", outcome);
+            observation.stop();
+        }
+    }
+
+    /**
+     * Times one decode attempt on the given path; a non-empty text is a success.
+     */
+    public String attempt(String path, Observation parent, Supplier<String> work) {
+        return attempt(path, parent, work, text -> text != null && !text.isEmpty());
+    }
+
+    /**
+     * Times one decode attempt on the given path; {@code decoded} tells whether it found anything.
+     */
+    // The scope is held open around the work, never referenced
+    @SuppressWarnings("try")
+    public <T> T attempt(String path, Observation parent, Supplier<T> work, Predicate<T> decoded) {
+        Observation observation = stageObservation(DECODE, path, parent);
+        T result = null;
+        try (Observation.Scope scope = observation.openScope()) {
+            result = work.get();
+            return result;
+        } finally {
+            observation.lowCardinalityKeyValue("outcome", result != null && decoded.test(result) ? SUCCESS : FAILURE);
+            observation.stop();
+        }
+    }
+
+    public void recordImage(long bytes, long pixels) {
+        if (suspended) {
+            return;
+        }
+        uploadBytes.record(bytes);
+        if (pixels > 0) {
+            imagePixels.record(pixels);
+        }
+    }
+
+    private Observation stageObservation(String stage, String path, Observation parent) {
+        if (suspended) {
+            return Observation.NOOP;
+        }
+        Observation observation = Observation.createNotStarted("barcode.stage", observationRegistry)
+                .lowCardinalityKeyValue("stage", stage)
+                .lowCardinalityKeyValue("path", path);
+        if (parent != null) {
+            observation.parentObservation(parent);
+        }
+        return observation.start();
+    }
+
+    private static String outcome(String error) {
+        if (error == null) {
+            return "decoded";
+        }
+        return switch (error) {
+            case ScanResult.UNREADABLE_IMAGE -> "unreadable";
+            case ScanResult.NO_BARCODE -> "no-barcode";
+            case ScanResult.NO_VALID_BARCODE -> "no-valid-barcode";
+            case ScanResult.DEADLINE_EXCEEDED -> "deadline-exceeded";
+            default -> "error";
+        };
+    }
+}
@@ -0,0 +1,345 @@
+package com.arzit.barcodescanner.services;
+
+import com.arzit.barcodescanner.metrics.ScanMetrics;
+
+import org.opencv.core.*;
+import org.opencv.imgproc.Imgproc;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+
+/**
+ * Finds candidate PDF417 regions in an image using gradient energy and morphology.
+ * <p>
+ * Candidates are distinct contours ranked by area weighted with how close their aspect ratio is
+ * to a PDF417 symbol, so the most barcode-like regions are decoded first.
+ * <p>
+ * Large images are localised on a downscaled pyramid level, with the morphology kernel scaled to
+ * match; the returned regions are in full-resolution coordinates so decoding keeps full detail.
+ * <p>
+ * Intermediate images live in pooled scratch sets that are reused across requests, so repeated
+ * localisation at similar sizes allocates no native memory; kernels are cached per scale.
+ */
+@Service
+public class BarcodeLocator {
+
+    // Each candidate's bounding box is grown by this factor so quiet zone and edges are included
+    private static final double EXPANSION_FACTOR = 5;
+    // Expanded candidates overlapping an earlier one by more than this are treated as the same region
+    private static final double MAX_OVERLAP = 0.6;
+    // Morphology kernel (rows x cols) at full resolution; halved with every pyramid level
+    private static final int KERNEL_ROWS = 21;
+    private static final int KERNEL_COLS = 7;
+    // PDF417 symbols are wider than tall, within roughly this aspect range (either orientation)
+    private static final double MIN_PDF417_ASPECT = 2.0;
+    private static final double MAX_PDF417_ASPECT = 6.0;
+
+    @Autowired
+    ScanMetrics scanMetrics = ScanMetrics.noop();
+
+    @Value("${barcode.locate.max-candidates:3}")
+    int maxCandidates = 3;
+
+    // Localisation runs on the first pyramid level whose longer side fits this size; 0 disables
+    @Value("${barcode.locate.max-dimension:1024}")
+    int maxDimension = 1024;
+
+    // Idle scratch sets kept for reuse; 0 means one per available core
+    @Value("${barcode.native.scratch-pool-size:0}")
+    int scratchPoolSize;
+
+    // Scratch sets holding more native memory than this are freed instead of pooled
+    @Value("${barcode.native.scratch-max-bytes:67108864}")
+    long scratchMaxBytes = 64L * 1024 * 1024;
+
+    private final Deque<Scratch> scratchPool = new ConcurrentLinkedDeque<>();
+    private final Map<Integer, Mat> kernels = new ConcurrentHashMap<>();
+
+    /**
+     * Destination Mats for every intermediate step of {@link #locate(Mat)}. OpenCV reuses a
+     * destination's buffer when size and type match, so a recycled set is allocation-free.
+     */
+    private static final class Scratch {
+        final Mat levelImage = new Mat();
+        final Mat gradX = new Mat();
+        final Mat gradY = new Mat();
+        final Mat grad = new Mat();
+        final Mat blurredImage = new Mat();
+        final Mat binaryImage = new Mat();
+        final Mat morphImage = new Mat();
+        final Mat hierarchy = new Mat();
+
+        Mat[] all() {
+            return new Mat[]{levelImage, gradX, gradY, grad, blurredImage, binaryImage, morphImage, hierarchy};
+        }
+
+        long bytes() {
+            long bytes = 0;
+            for (Mat mat : all()) {
+                bytes += MatScope.bytesOf(mat);
+            }
+            return bytes;
+        }
+
+        void release() {
+            for (Mat mat : all()) {
+                mat.release();
+            }
+        }
+    }
+
+    public List<Mat> cropImageBarcode(Mat inputImage) {
+        return cropImageBarcode(inputImage, maxCandidates);
+    }
+
+    /**
+     * As {@link #cropImageBarcode(Mat)}, but returns up to {@code limit} candidates, for images
+     * that carry several symbols.
+     */
+    public List<Mat> cropImageBarcode(Mat inputImage, int limit) {
+        return scanMetrics.stage(ScanMetrics.LOCATE, null, () -> crop(inputImage, limit, null), List::isEmpty);
+    }
+
+    /**
+     * As {@link #cropImageBarcode(Mat)}, also adding the box of each candidate's symbol, without the
+     * expansion, to {@code symbols} in the same order, so what is printed around a symbol can be
+     * found without locating it again.
+     */
+    public List<Mat> cropImageBarcode(Mat inputImage, List<Rect> symbols) {
+        return scanMetrics.stage(ScanMetrics.LOCATE, null, () -> crop(inputImage, maxCandidates, symbols), List::isEmpty);
+    }
+
+    private List<Mat> crop(Mat inputImage, int limit, List<Rect> symbols) {
+        Mat grayImage = toGray(inputImage);
+        List<Mat> mats = new ArrayList<>();
+        for (Rect symbol : locate(grayImage, 1, limit, false)) {
+            if (symbols != null) {
+                symbols.add(symbol);
+            }
+            mats.add(new Mat(grayImage, expand(symbol, grayImage.size())));
+        }
+        if (grayImage != inputImage) {
+            // The crops keep the converted pixels alive; only this header is dropped
+            grayImage.release();
+        }
+        return mats;
+    }
+
+    /**
+     * Returns up to {@code maxCandidates} distinct, expanded candidate regions, best first,
+     * in the coordinates of {@code grayImage}.
+     */
+    public List<Rect> locate(Mat grayImage) {
+        return locate(grayImage, 1);
+    }
+
+    /**
+     * As {@link #locate(Mat)} for an image already downscaled {@code sourceScale} times from the
+     * resolution it was captured at, such as a subsampled overview. It is localised on the pyramid
+     * level the original would have been, so candidates come out the same as for the original.
+     */
+    public List<Rect> locate(Mat grayImage, int sourceScale) {
+        return locate(grayImage, sourceScale, maxCandidates, true);
+    }
+
+    private List<Rect> locate(Mat grayImage, int sourceScale, int limit, boolean expand) {
+        Scratch scratch = acquireScratch();
+        List<MatOfPoint> contours = new ArrayList<>();
+        try {
+            // Step 1: Pick a pyramid level from the original size and downscale once
+            int downscale = 1 << pyramidLevel(new Size(grayImage.cols() * (double) sourceScale, grayImage.rows() * (double) sourceScale));
+            Mat levelImage = grayImage;
+            if (downscale > sourceScale) {
+                levelImage = scratch.levelImage;
+                double factor = sourceScale / (double) downscale;
+                Imgproc.resize(grayImage, levelImage, new Size(), factor, factor, Imgproc.INTER_AREA);
+            } else {
+                downscale = sourceScale;
+            }
+
+            // Step 2: Calculate gradient using Sobel operator
+            Imgproc.Sobel(levelImage, scratch.gradX, CvType.CV_8U, 1, 0, 3, 1, 0, Core.BORDER_DEFAULT);
+            Imgproc.Sobel(levelImage, scratch.gradY, CvType.CV_8U, 0, 1, 3, 1, 0, Core.BORDER_DEFAULT);
+            Core.addWeighted(scratch.gradX, 1.0, scratch.gradY, 1.0, 0, scratch.grad);
+
+            // Step 3: Apply Gaussian blur (3x3 kernel)
+            Imgproc.GaussianBlur(scratch.grad, scratch.blurredImage, new Size(3, 3), 0);
+
+            // Step 4: Apply binary thresholding (Otsu)
+            Imgproc.threshold(scratch.blurredImage, scratch.binaryImage, 255, 255, Imgproc.THRESH_BINARY | Imgproc.THRESH_OTSU);
+
+            // Step 5: Morphological close, then erode/dilate with the 21x7 kernel scaled to this level
+            Mat morphKernel = morphKernel(downscale);
+            Mat morphImage = scratch.morphImage;
+            Imgproc.morphologyEx(scratch.binaryImage, morphImage, Imgproc.MORPH_CLOSE, morphKernel);
+            Imgproc.erode(morphImage, morphImage, morphKernel, new Point(-1, -1), 4);
+            Imgproc.dilate(morphImage, morphImage, morphKernel, new Point(-1, -1), 4);
+
+            // Step 6: Find the contours
+            Imgproc.findContours(morphImage, contours, scratch.hierarchy, Imgproc.RETR_EXTERNAL, Imgproc.CHAIN_APPROX_SIMPLE);
+
+            return selectCandidates(contours, grayImage.size().width / levelImage.cols(), grayImage.size(), limit, expand);
+        } finally {
+            for (MatOfPoint contour : contours) {
+                contour.release();
+            }
+            recycleScratch(scratch);
+        }
+    }
+
+    /**
+     * Native bytes held by idle pooled scratch sets.
+     */
+    public long pooledScratchBytes() {
+        long bytes = 0;
+        for (Scratch scratch : scratchPool) {
+            bytes += scratch.bytes();
+        }
+        return bytes;
+    }
+
+    private Scratch acquireScratch() {
+        Scratch scratch = scratchPool.pollFirst();
+        return scratch != null ? scratch : new Scratch();
+    }
+
+    private void recycleScratch(Scratch scratch) {
+        int capacity = scratchPoolSize > 0 ? scratchPoolSize : Runtime.getRuntime().availableProcessors();
+        // Most recently used first, so the next request of similar size finds warm buffers
+        if (scratchPool.size() < capacity && scratch.bytes() <= scratchMaxBytes) {
+            scratchPool.offerFirst(scratch);
+        } else {
+            scratch.release();
+        }
+    }
+
+    private Mat morphKernel(int downscale) {
+        // Shared read-only between threads; at most one per downscale factor
+        return kernels.computeIfAbsent(downscale,
+                d -> Mat.ones(scaledKernel(KERNEL_ROWS, d), scaledKernel(KERNEL_COLS, d), CvType.CV_8UC1));
+    }
+
+    /**
+     * Number of halvings needed for the longer side to fit {@code maxDimension}.
+     */
+    int pyramidLevel(Size imageSize) {
+        if (maxDimension <= 0) {
+            return 0;
+        }
+        int level = 0;
+        double longSide = Math.max(imageSize.width, imageSize.height);
+        while (longSide / (1 << level) > maxDimension) {
+            level++;
+        }
+        return level;
+    }
+
+    private static int scaledKernel(int size, int downscale) {
+        return Math.max(1, (int) Math.round(size / (double) downscale));
+    }
+
+    /**
+     * Scores contours, maps them back to full resolution by {@code scale}, drops those that mostly
+     * repeat a better candidate and expands the best ones (unless {@code expand} is false).
+     */
+    List<Rect> selectCandidates(List<MatOfPoint> contours, double scale, Size imageSize) {
+        return selectCandidates(contours, scale, imageSize, maxCandidates, true);
+    }
+
+    private List<Rect> selectCandidates(List<MatOfPoint> contours, double scale, Size imageSize, int limit, boolean expand) {
+        List<ScoredRegion> scored = new ArrayList<>(contours.size());
+        for (MatOfPoint contour : contours) {
+            Rect box = scale(Imgproc.boundingRect(contour), scale, imageSize);
+            double score = Imgproc.contourArea(contour) * aspectWeight(box);
+            if (score > 0) {
+                scored.add(new ScoredRegion(box, score));
+            }
+        }
+        scored.sort(Comparator.comparingDouble(ScoredRegion::score).reversed());
+
+        // Repeats are judged on the boxes themselves: the expanded boxes of nearby symbols overlap
+        List<Rect> boxes = new ArrayList<>();
+        for (ScoredRegion region : scored) {
+            if (boxes.size() >= limit) {
+                break;
+            }
+            if (boxes.stream().noneMatch(existing -> overlap(existing, region.box()) > MAX_OVERLAP)) {
+                boxes.add(region.box());
+            }
+        }
+        if (!expand) {
+            return boxes;
+        }
+        List<Rect> candidates = new ArrayList<>(boxes.size());
+        for (Rect box : boxes) {
+            candidates.add(expand(box, imageSize));
+        }
+        return candidates;
+    }
+
+    private static double aspectWeight(Rect box) {
+        if (box.width == 0 || box.height == 0) {
+            return 0;
+        }
+        double aspect = (double) Math.max(box.width, box.height) / Math.min(box.width, box.height);
+        if (aspect >= MIN_PDF417_ASPECT && aspect <= MAX_PDF417_ASPECT) {
+            return 1.0;
+        }
+        // Perspective and cropping distort the ratio, so off-ratio regions are penalised, not dropped
+        double distance = aspect < MIN_PDF417_ASPECT ? MIN_PDF417_ASPECT / aspect : aspect / MAX_PDF417_ASPECT;
+        return 1.0 / (distance * distance);
+    }
+
+    private static Rect scale(Rect box, double scale, Size imageSize) {
+        if (scale == 1.0) {
+            return box;
+        }
+        int x = (int) Math.floor(box.x * scale);
+        int y = (int) Math.floor(box.y * scale);
+        int right = (int) Math.min(imageSize.width, Math.ceil((box.x + box.width) * scale));
+        int bottom = (int) Math.min(imageSize.height, Math.ceil((box.y + box.height) * scale));
+        return new Rect(x, y, right - x, bottom - y);
+    }
+
+    static Rect expand(Rect barcodeRegion, Size imageSize) {
+        int expandedWidth = (int) (barcodeRegion.width * EXPANSION_FACTOR);
+        int expandedHeight = (int) (barcodeRegion.height * EXPANSION_FACTOR);
+
+        // Keep the expanded box centred on the region, clamped to the image bounds
+        int x = Math.max(0, barcodeRegion.x - (expandedWidth - barcodeRegion.width) / 2);
+        int y = Math.max(0, barcodeRegion.y - (expandedHeight - barcodeRegion.height) / 2);
+        int maxWidth = Math.min(expandedWidth, (int) imageSize.width - x);
+        int maxHeight = Math.min(expandedHeight, (int) imageSize.height - y);
+        return new Rect(x, y, maxWidth, maxHeight);
+    }
+
+    /**
+     * Intersection over the smaller of the two areas.
+     */
+    private static double overlap(Rect a, Rect b) {
+        int ix = Math.max(0, Math.min(a.x + a.width, b.x + b.width) - Math.max(a.x, b.x));
+        int iy = Math.max(0, Math.min(a.y + a.height, b.y + b.height) - Math.max(a.y, b.y));
+        double smaller = Math.min(a.area(), b.area());
+        return smaller == 0 ? 0 : ix * (double) iy / smaller;
+    }
+
+    static Mat toGray(Mat inputImage) {
+        if (inputImage.channels() == 1) {
+            return inputImage;
+        }
+        Mat grayImage = new Mat();
+        Imgproc.cvtColor(inputImage, grayImage, Imgproc.COLOR_BGR2GRAY);
+        return grayImage;
+    }
+
+    private record ScoredRegion(Rect box, double score) {
+    }
+}
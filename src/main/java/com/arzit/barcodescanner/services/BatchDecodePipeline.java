@@ -0,0 +1,271 @@
+package com.arzit.barcodescanner.services;
+
+import com.arzit.barcodescanner.metrics.ScanMetrics;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import io.micrometer.observation.Observation;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Staged pipeline for batch decoding: image decode, region detection, then ZXing decode.
+ * <p>
+ * Each stage has its own fixed pool and bounded queue. Decoded Mats are only held in the
+ * inter-stage queues, and a full downstream queue blocks the upstream worker, so native memory
+ * stays bounded however large the batch is. Results are delivered in completion order.
+ * <p>
+ * Encoded uploads are bounded by a byte budget shared by all batches: callers {@link #reserve}
+ * each item's bytes before buffering it, and the bytes are returned once the item's result is
+ * delivered, so parallel batches cannot pile up uploads beyond {@code buffered-bytes}.
+ * When a located symbol does not decode, the decode stage runs the {@link OcrFallback} on the
+ * image before releasing it.
+ * <p>
+ * Each item has the scheduler's time budget from the moment its ingest starts: the full frame is
+ * always decoded, candidates and the OCR fallback only while the budget lasts.
+ */
+@Service
+public class BatchDecodePipeline {
+
+    @Autowired
+    ImageIngestionService imageIngestionService;
+    @Autowired
+    BarcodeLocator barcodeLocator;
+    @Autowired
+    PDF417Decoder pdf417Decoder;
+    @Autowired
+    OcrFallback ocrFallback;
+    @Autowired
+    ScanMetrics scanMetrics;
+
+    // Worker threads per stage; 0 means one per available core
+    @Value("${barcode.batch.ingest-threads:0}")
+    int ingestThreads;
+    @Value("${barcode.batch.locate-threads:0}")
+    int locateThreads;
+    @Value("${barcode.batch.decode-threads:0}")
+    int decodeThreads;
+
+    // Images waiting between stages, per stage
+    @Value("${barcode.batch.queue-capacity:32}")
+    int queueCapacity;
+
+    // Encoded uploads waiting for the first stage, across all batches
+    @Value("${barcode.batch.pending-capacity:4096}")
+    int pendingCapacity;
+
+    // Time one item may take from the start of its ingest; 0 means no budget
+    @Value("${barcode.decode.budget-ms:5000}")
+    long budgetMs = 5000;
+
+    // Encoded upload bytes all batches together may buffer until their results are delivered
+    @Value("${barcode.batch.buffered-bytes:536870912}")
+    long bufferedBytes = 512L * 1024 * 1024;
+
+    private final AtomicLong reservedBytes = new AtomicLong();
+
+    private ThreadPoolExecutor ingestStage;
+    private ThreadPoolExecutor locateStage;
+    private ThreadPoolExecutor decodeStage;
+
+    public record BatchItem(int index, String name, byte[] bytes) {
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public record BatchResult(int index, String name, String text, String error, String ocrText, long elapsedMs) {
+    }
+
+    @PostConstruct
+    void start() {
+        int cores = Runtime.getRuntime().availableProcessors();
+        ingestStage = stage("pdf417-batch-ingest-", ingestThreads > 0 ? ingestThreads : cores, pendingCapacity, false);
+        locateStage = stage("pdf417-batch-locate-", locateThreads > 0 ? locateThreads : cores, queueCapacity, true);
+        decodeStage = stage("pdf417-batch-decode-", decodeThreads > 0 ? decodeThreads : cores, queueCapacity, true);
+    }
+
+    @PreDestroy
+    void stop() {
+        ingestStage.shutdownNow();
+        locateStage.shutdownNow();
+        decodeStage.shutdownNow();
+    }
+
+    /**
+     * Reserves {@code bytes} of the shared budget before they are buffered; false when the budget
+     * is exhausted.
+     */
+    public boolean reserve(long bytes) {
+        long current;
+        do {
+            current = reservedBytes.get();
+            if (current + bytes > bufferedBytes) {
+                return false;
+            }
+        } while (!reservedBytes.compareAndSet(current, current + bytes));
+        return true;
+    }
+
+    /**
+     * Returns reserved bytes that were never submitted, such as those of a batch that failed to read.
+     */
+    public void release(long bytes) {
+        reservedBytes.addAndGet(-bytes);
+    }
+
+    /**
+     * Bytes of the shared budget held by buffered uploads.
+     */
+    public long reservedBytes() {
+        return reservedBytes.get();
+    }
+
+    /**
+     * Feeds the items into the pipeline without blocking. {@code sink} receives one result per item,
+     * possibly from several threads at once, and {@code onComplete} runs after the last one. The
+     * items' bytes must have been {@link #reserve reserved}; each item's are released with its result.
+     */
+    public void submit(List<BatchItem> items, Consumer<BatchResult> sink, Runnable onComplete) {
+        if (items.isEmpty()) {
+            onComplete.run();
+            return;
+        }
+        AtomicInteger remaining = new AtomicInteger(items.size());
+        Consumer<BatchResult> tracked = result -> {
+            try {
+                sink.accept(result);
+            } finally {
+                if (remaining.decrementAndGet() == 0) {
+                    onComplete.run();
+                }
+            }
+        };
+        for (BatchItem item : items) {
+            long start = System.nanoTime();
+            // One scan observation per item, carried across the stage threads
+            Observation scan = scanMetrics.startScan("batch");
+            Consumer<BatchResult> observed = result -> {
+                release(item.bytes().length);
+                scanMetrics.stopScan(scan, "batch", result.error());
+                tracked.accept(result);
+            };
+            try {
+                ingestStage.execute(scanMetrics.scoped(scan, () -> ingest(item, start, observed)));
+            } catch (RejectedExecutionException e) {
+                observed.accept(failure(item, start, "Batch pipeline is saturated, retry later."));
+            }
+        }
+    }
+
+    private void ingest(BatchItem item, long start, Consumer<BatchResult> sink) {
+        // Started here, so time spent waiting behind other items does not count
+        Deadline deadline = budgetMs > 0 ? Deadline.after(Duration.ofMillis(budgetMs)) : Deadline.none();
+        Mat image;
+        try {
+            image = imageIngestionService.decode(item.bytes());
+        } catch (ImageRejectedException e) {
+            sink.accept(failure(item, start, e.getMessage()));
+            return;
+        }
+        if (image.empty()) {
+            image.release();
+            sink.accept(failure(item, start, ScanResult.UNREADABLE_IMAGE));
+            return;
+        }
+        handOff(locateStage, item, start, sink, () -> locate(item, image, deadline, start, sink), List.of(image));
+    }
+
+    private void locate(BatchItem item, Mat image, Deadline deadline, long start, Consumer<BatchResult> sink) {
+        // The whole frame is always the first region tried
+        List<Mat> regions = new ArrayList<>();
+        regions.add(image);
+        List<Rect> symbols = new ArrayList<>();
+        regions.addAll(barcodeLocator.cropImageBarcode(image, symbols));
+        Rect symbol = symbols.isEmpty() ? null : symbols.get(0);
+        handOff(decodeStage, item, start, sink, () -> decode(item, regions, symbol, deadline, start, sink), regions);
+    }
+
+    private void decode(BatchItem item, List<Mat> regions, Rect symbol, Deadline deadline, long start,
+                        Consumer<BatchResult> sink) {
+        String decodedText = pdf417Decoder.decodeFullFrame(regions.get(0));
+        if (decodedText == null && !deadline.expired()) {
+            decodedText = pdf417Decoder.decodeSequentially(regions.subList(1, regions.size()));
+        }
+        // A symbol was located but did not decode: the text beside it is read with what is left of the budget
+        String ocrText = decodedText == null ? ocrFallback.read(regions.get(0), symbol, deadline) : null;
+        // The crops are views of the image; releasing all headers frees the pixels
+        regions.forEach(Mat::release);
+        if (decodedText != null) {
+            sink.accept(new BatchResult(item.index(), item.name(), decodedText, null, null, elapsedMs(start)));
+        } else {
+            String error = regions.size() == 1 ? ScanResult.NO_BARCODE
+                    : deadline.expired() && ocrText == null ? ScanResult.DEADLINE_EXCEEDED : ScanResult.NO_VALID_BARCODE;
+            sink.accept(new BatchResult(item.index(), item.name(), null, error, ocrText, elapsedMs(start)));
+        }
+    }
+
+    /**
+     * Queues the next stage. {@code mats} are released if the stage fails or never runs.
+     */
+    private void handOff(ThreadPoolExecutor next, BatchItem item, long start, Consumer<BatchResult> sink,
+                         Runnable task, List<Mat> mats) {
+        try {
+            next.execute(scanMetrics.scoped(scanMetrics.currentObservation(), () -> {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    mats.forEach(Mat::release);
+                    sink.accept(failure(item, start, "Error processing the image: " + e.getMessage()));
+                }
+            }));
+        } catch (RejectedExecutionException e) {
+            mats.forEach(Mat::release);
+            sink.accept(failure(item, start, "Batch pipeline is shutting down."));
+        }
+    }
+
+    private static BatchResult failure(BatchItem item, long start, String error) {
+        return new BatchResult(item.index(), item.name(), null, error, null, elapsedMs(start));
+    }
+
+    private static long elapsedMs(long start) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    private static ThreadPoolExecutor stage(String name, int threads, int capacity, boolean blockWhenFull) {
+        AtomicInteger counter = new AtomicInteger();
+        RejectedExecutionHandler whenFull = blockWhenFull
+                ? (task, executor) -> {
+                    // Backpressure: the upstream worker waits for room instead of piling up Mats
+                    if (executor.isShutdown()) {
+                        throw new RejectedExecutionException("Stage is shut down");
+                    }
+                    try {
+                        executor.getQueue().put(task);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new RejectedExecutionException("Interrupted while waiting for stage capacity", e);
+                    }
+                }
+                : new ThreadPoolExecutor.AbortPolicy();
+        return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(capacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, name + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                whenFull);
+    }
+}
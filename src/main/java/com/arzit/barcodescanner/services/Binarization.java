@@ -0,0 +1,33 @@
+package com.arzit.barcodescanner.services;
+
+import com.google.zxing.Binarizer;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.common.GlobalHistogramBinarizer;
+import com.google.zxing.common.HybridBinarizer;
+
+import java.util.function.Function;
+
+/**
+ * The binarizers a decode path can be configured with.
+ */
+public enum Binarization {
+
+    // ZXing's block-based local threshold
+    HYBRID(HybridBinarizer::new),
+    // ZXing's single threshold from the luminance histogram
+    GLOBAL_HISTOGRAM(GlobalHistogramBinarizer::new),
+    // Local mean threshold computed by OpenCV
+    ADAPTIVE(source -> new MatBinarizer(source, MatBinarizer.Method.ADAPTIVE)),
+    // Local mean threshold from running sums on reused buffers
+    INTEGRAL(source -> new MatBinarizer(source, MatBinarizer.Method.INTEGRAL));
+
+    private final Function<LuminanceSource, Binarizer> factory;
+
+    Binarization(Function<LuminanceSource, Binarizer> factory) {
+        this.factory = factory;
+    }
+
+    public Binarizer create(LuminanceSource source) {
+        return factory.apply(source);
+    }
+}
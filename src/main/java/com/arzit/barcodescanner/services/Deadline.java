@@ -0,0 +1,39 @@
+package com.arzit.barcodescanner.services;
+
+import java.time.Duration;
+
+/**
+ * Point on the {@link System#nanoTime()} clock after which remaining decode fallbacks are skipped.
+ */
+public record Deadline(long nanos) {
+
+    private static final Deadline NONE = new Deadline(Long.MAX_VALUE);
+
+    public static Deadline none() {
+        return NONE;
+    }
+
+    public static Deadline after(Duration timeout) {
+        return new Deadline(System.nanoTime() + timeout.toNanos());
+    }
+
+    public Deadline earliest(Deadline other) {
+        if (isNone() || other.isNone()) {
+            return isNone() ? other : this;
+        }
+        // Difference, not comparison, as nanoTime may wrap
+        return other.nanos - nanos < 0 ? other : this;
+    }
+
+    public boolean isNone() {
+        return nanos == Long.MAX_VALUE;
+    }
+
+    public boolean expired() {
+        return !isNone() && remainingNanos() <= 0;
+    }
+
+    public long remainingNanos() {
+        return isNone() ? Long.MAX_VALUE : nanos - System.nanoTime();
+    }
+}
@@ -0,0 +1,365 @@
+package com.arzit.barcodescanner.services;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Asynchronous decode jobs with admission control, so long scans never hold a servlet thread.
+ * <p>
+ * A job is admitted only while fewer than {@code concurrency + queue-capacity} jobs are
+ * unfinished and their uploads together stay within {@code max-bytes}; otherwise it is refused
+ * with a retry delay estimated from recent job durations. Admission is decided on the declared
+ * upload size, before the upload is read into the heap.
+ * Admitted jobs wait for one of {@code concurrency} CPU permits, so at most that many scans run
+ * at once. On Java 21+ every job gets a virtual thread that waits for its permit without holding
+ * an OS thread; older runtimes fall back to a fixed pool of {@code concurrency} platform threads.
+ * <p>
+ * Each job has a deadline counted from submission; fallbacks not started by then are skipped.
+ * Finished jobs can be polled for the retention period and are optionally POSTed to a callback
+ * on the loopback interface.
+ */
+@Service
+public class DecodeJobService {
+
+    @Autowired
+    PDF417ScanService pdf417ScanService;
+    @Autowired
+    ObjectMapper objectMapper;
+
+    // Scans running at once; 0 means one per available core
+    @Value("${barcode.jobs.concurrency:0}")
+    int concurrency;
+
+    // Admitted jobs allowed to wait for a CPU permit
+    @Value("${barcode.jobs.queue-capacity:64}")
+    int queueCapacity = 64;
+
+    // Upload bytes held by unfinished jobs, all together
+    @Value("${barcode.jobs.max-bytes:268435456}")
+    long maxBytes = 256L * 1024 * 1024;
+
+    @Value("${barcode.jobs.deadline-ms:10000}")
+    long deadlineMs = 10_000;
+
+    // Upper bound for a deadline requested by the client
+    @Value("${barcode.jobs.max-deadline-ms:60000}")
+    long maxDeadlineMs = 60_000;
+
+    @Value("${barcode.jobs.retention-seconds:600}")
+    long retentionSeconds = 600;
+
+    @Value("${barcode.jobs.callback-timeout-ms:5000}")
+    long callbackTimeoutMs = 5_000;
+
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+    // Finished jobs in completion order, which is also expiry order
+    private final Queue<Job> finished = new ConcurrentLinkedQueue<>();
+    // Moving average of job run time, used for Retry-After
+    private final AtomicLong meanRunNanos = new AtomicLong(TimeUnit.SECONDS.toNanos(1));
+    private final AtomicLong admittedBytes = new AtomicLong();
+    private int permits;
+    private Semaphore admission;
+    private Semaphore cpu;
+    private ExecutorService executor;
+    private HttpClient httpClient;
+
+    public enum JobStatus {
+        QUEUED, RUNNING, DONE
+    }
+
+    /**
+     * Reads an upload once it has been admitted.
+     */
+    @FunctionalInterface
+    public interface Upload {
+        byte[] read() throws IOException;
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public record JobView(String id, JobStatus status, String text, String error, String ocrText, Long elapsedMs) {
+    }
+
+    private static final class Job {
+        final String id = UUID.randomUUID().toString();
+        final long submittedAt = System.nanoTime();
+        final Deadline deadline;
+        final URI callback;
+        // Bytes reserved against max-bytes until the job finishes
+        final long reservedBytes;
+        volatile byte[] upload;
+        volatile JobStatus status = JobStatus.QUEUED;
+        volatile ScanResult result;
+        volatile long finishedAt;
+
+        Job(byte[] upload, long reservedBytes, Deadline deadline, URI callback) {
+            this.upload = upload;
+            this.reservedBytes = reservedBytes;
+            this.deadline = deadline;
+            this.callback = callback;
+        }
+
+        JobView view() {
+            ScanResult done = result;
+            if (done == null) {
+                return new JobView(id, status, null, null, null, null);
+            }
+            return new JobView(id, JobStatus.DONE, done.text(), done.error(), done.ocrText(),
+                    TimeUnit.NANOSECONDS.toMillis(finishedAt - submittedAt));
+        }
+    }
+
+    @PostConstruct
+    void start() {
+        permits = concurrency > 0 ? concurrency : Runtime.getRuntime().availableProcessors();
+        admission = new Semaphore(permits + queueCapacity);
+        cpu = new Semaphore(permits);
+        executor = newJobExecutor(permits);
+        httpClient = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofMillis(callbackTimeoutMs))
+                .build();
+    }
+
+    @PreDestroy
+    void stop() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Admits a job and returns immediately. {@code requestedDeadlineMs} may be null for the
+     * default and is capped at the configured maximum; {@code callback} may be null.
+     *
+     * @throws JobRejectedException when the service is saturated
+     */
+    public JobView submit(byte[] upload, Long requestedDeadlineMs, URI callback) {
+        try {
+            return submit(upload.length, () -> upload, requestedDeadlineMs, callback);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * As {@link #submit(byte[], Long, URI)}, admitting the job on its declared {@code size} and
+     * reading the upload only once admitted.
+     *
+     * @throws ImageRejectedException when the upload alone exceeds the byte limit of all jobs
+     * @throws JobRejectedException when the service is saturated
+     */
+    public JobView submit(long size, Upload upload, Long requestedDeadlineMs, URI callback) throws IOException {
+        purgeExpired();
+        if (size > maxBytes) {
+            throw new ImageRejectedException("Upload of " + size + " bytes exceeds the job limit of " + maxBytes + " bytes.");
+        }
+        if (!admission.tryAcquire()) {
+            throw new JobRejectedException("Too many decode jobs in progress, retry later.", retryAfterSeconds());
+        }
+        if (!reserveBytes(size)) {
+            admission.release();
+            throw new JobRejectedException("Too many upload bytes in decode jobs, retry later.", retryAfterSeconds());
+        }
+        byte[] bytes;
+        try {
+            bytes = upload.read();
+        } catch (IOException | RuntimeException e) {
+            release(size);
+            throw e;
+        }
+        long timeoutMs = requestedDeadlineMs != null ? Math.min(Math.max(0, requestedDeadlineMs), maxDeadlineMs) : deadlineMs;
+        Job job = new Job(bytes, size, Deadline.after(Duration.ofMillis(timeoutMs)), callback);
+        jobs.put(job.id, job);
+        try {
+            executor.execute(() -> run(job));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.id);
+            release(size);
+            throw new JobRejectedException("Decode jobs are shutting down.", retryAfterSeconds());
+        }
+        return job.view();
+    }
+
+    /**
+     * Returns the job's current state, or {@code null} when it is unknown or expired.
+     */
+    public JobView get(String id) {
+        purgeExpired();
+        Job job = jobs.get(id);
+        return job != null ? job.view() : null;
+    }
+
+    /**
+     * Parses a callback URL, accepting only http(s) URLs whose host is {@code localhost} or a
+     * literal loopback address. Host names are never resolved here: the client would resolve them
+     * again when posting, and the second answer could point elsewhere.
+     *
+     * @throws IllegalArgumentException for any other URL
+     */
+    public URI callbackUri(String url) {
+        URI uri;
+        try {
+            uri = URI.create(url);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid callback URL.");
+        }
+        if (!"http".equalsIgnoreCase(uri.getScheme()) && !"https".equalsIgnoreCase(uri.getScheme())) {
+            throw new IllegalArgumentException("Callback URL must use http or https.");
+        }
+        String host = uri.getHost();
+        if (host == null || !("localhost".equalsIgnoreCase(host) || isLoopbackLiteral(host))) {
+            throw new IllegalArgumentException("Callback URL must point to localhost or a loopback address.");
+        }
+        return uri;
+    }
+
+    /**
+     * True for an IPv4 literal or a bracketed IPv6 literal that is a loopback address; looking up
+     * a literal involves no name service.
+     */
+    private static boolean isLoopbackLiteral(String host) {
+        boolean literal = host.startsWith("[") || host.chars().allMatch(c -> c == '.' || Character.isDigit(c));
+        if (!literal) {
+            return false;
+        }
+        try {
+            return InetAddress.getByName(host).isLoopbackAddress();
+        } catch (UnknownHostException e) {
+            return false;
+        }
+    }
+
+    private void run(Job job) {
+        try {
+            cpu.acquire();
+        } catch (InterruptedException e) {
+            // Never started: reported as failed so pollers do not wait on a job stuck in QUEUED
+            finish(job, ScanResult.failed("Decode job was interrupted before it started."));
+            release(job.reservedBytes);
+            Thread.currentThread().interrupt();
+            if (job.callback != null) {
+                notify(job);
+            }
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            job.status = JobStatus.RUNNING;
+            ScanResult result;
+            try {
+                result = job.deadline.expired()
+                        ? ScanResult.failed(ScanResult.DEADLINE_EXCEEDED)
+                        : pdf417ScanService.scan(job.upload, job.deadline, "job");
+            } catch (ImageRejectedException e) {
+                result = ScanResult.failed(e.getMessage());
+            } catch (RuntimeException e) {
+                result = ScanResult.failed("Error processing the image: " + e.getMessage());
+            }
+            finish(job, result);
+        } finally {
+            recordRunTime(System.nanoTime() - start);
+            cpu.release();
+            release(job.reservedBytes);
+        }
+        if (job.callback != null) {
+            notify(job);
+        }
+    }
+
+    private boolean reserveBytes(long bytes) {
+        long current;
+        do {
+            current = admittedBytes.get();
+            if (current + bytes > maxBytes) {
+                return false;
+            }
+        } while (!admittedBytes.compareAndSet(current, current + bytes));
+        return true;
+    }
+
+    /**
+     * Returns a job's admission slot and its reserved bytes.
+     */
+    private void release(long reservedBytes) {
+        admittedBytes.addAndGet(-reservedBytes);
+        admission.release();
+    }
+
+    private void finish(Job job, ScanResult result) {
+        job.upload = null;
+        job.finishedAt = System.nanoTime();
+        job.result = result;
+        job.status = JobStatus.DONE;
+        finished.add(job);
+    }
+
+    private void notify(Job job) {
+        try {
+            HttpRequest request = HttpRequest.newBuilder(job.callback)
+                    .timeout(Duration.ofMillis(callbackTimeoutMs))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(job.view())))
+                    .build();
+            // Best effort: the result stays available for polling if the callback fails
+            httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding());
+        } catch (JsonProcessingException | IllegalArgumentException e) {
+            // Not deliverable; the client can still poll
+        }
+    }
+
+    private void recordRunTime(long nanos) {
+        meanRunNanos.getAndUpdate(mean -> mean + (nanos - mean) / 8);
+    }
+
+    /**
+     * Time for the jobs already queued to start, at the recent mean run time.
+     */
+    private long retryAfterSeconds() {
+        long waitNanos = meanRunNanos.get() * Math.max(1, queueCapacity) / permits;
+        return Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos + TimeUnit.SECONDS.toNanos(1) - 1));
+    }
+
+    private void purgeExpired() {
+        long expiredBefore = System.nanoTime() - TimeUnit.SECONDS.toNanos(retentionSeconds);
+        Job oldest;
+        while ((oldest = finished.peek()) != null && oldest.finishedAt - expiredBefore < 0) {
+            if (finished.remove(oldest)) {
+                jobs.remove(oldest.id);
+            }
+        }
+    }
+
+    private static ExecutorService newJobExecutor(int permits) {
+        try {
+            // Java 21+: one virtual thread per job
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            // Platform threads, one per CPU permit; admission bounds the queue in front of them
+            AtomicInteger counter = new AtomicInteger();
+            return Executors.newFixedThreadPool(permits, runnable -> {
+                Thread thread = new Thread(runnable, "pdf417-job-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package com.arzit.barcodescanner.services;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded LRU cache of scan outcomes with a time-to-live.
+ * <p>
+ * The primary key is a digest of the upload bytes, so byte-identical resubmissions skip the whole
+ * pipeline, and both decoded and failed outcomes are kept. Optionally a second level matches a
+ * difference hash of the downsampled image within a small Hamming distance, so near-duplicate
+ * frames reuse a successful decode; this level is lossy, so it is disabled by default and never
+ * records failures.
+ */
+@Service
+public class DecodeResultCache {
+
+    // Rough per-entry overhead (map node, key, record) used for the memory bound
+    private static final int ENTRY_OVERHEAD_BYTES = 200;
+
+    @Value("${barcode.cache.enabled:true}")
+    boolean enabled = true;
+
+    @Value("${barcode.cache.max-entries:10000}")
+    int maxEntries = 10000;
+
+    @Value("${barcode.cache.max-bytes:33554432}")
+    long maxBytes = 32L * 1024 * 1024;
+
+    @Value("${barcode.cache.ttl-seconds:600}")
+    long ttlSeconds = 600;
+
+    @Value("${barcode.cache.perceptual.enabled:false}")
+    boolean perceptualEnabled;
+
+    // Side of the difference-hash grid; the hash has grid * grid bits
+    @Value("${barcode.cache.perceptual.grid:16}")
+    int perceptualGrid = 16;
+
+    // Hashes differing in at most this many bits count as the same frame
+    @Value("${barcode.cache.perceptual.max-distance:6}")
+    int perceptualMaxDistance = 6;
+
+    // Near-duplicate lookups scan every perceptual entry, so this level is kept small
+    @Value("${barcode.cache.perceptual.max-entries:1024}")
+    int perceptualMaxEntries = 1024;
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private final LinkedHashMap<PerceptualKey, Entry> similar = new LinkedHashMap<>(64, 0.75f, true);
+    private long bytes;
+    private long hits;
+    private long misses;
+    private long similarHits;
+    private long similarMisses;
+    private long evictions;
+
+    private record Entry(ScanResult result, long expiresAt, long size) {
+    }
+
+    /**
+     * Difference hash of a frame; only frames with identical dimensions are compared.
+     */
+    public record PerceptualKey(int width, int height, long[] bits) {
+
+        int distance(PerceptualKey other) {
+            int distance = 0;
+            for (int i = 0; i < bits.length; i++) {
+                distance += Long.bitCount(bits[i] ^ other.bits[i]);
+            }
+            return distance;
+        }
+    }
+
+    /**
+     * Hits and misses of content-key lookups; the near-duplicate level, consulted only after a
+     * content miss, is counted separately so no lookup counts twice.
+     */
+    public record CacheStats(long hits, long misses, long similarHits, long similarMisses, long evictions,
+                             int entries, long bytes) {
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public boolean isPerceptualEnabled() {
+        return enabled && perceptualEnabled;
+    }
+
+    /**
+     * Content key of an upload.
+     */
+    public String contentKey(byte[] upload) {
+        try {
+            return "sha256:" + HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(upload));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Difference hash of a grayscale image: each bit says whether a cell of the downsampled image
+     * is brighter than its right-hand neighbour.
+     */
+    public PerceptualKey perceptualKey(Mat grayImage) {
+        Mat small = new Mat();
+        Imgproc.resize(grayImage, small, new Size(perceptualGrid + 1, perceptualGrid), 0, 0, Imgproc.INTER_AREA);
+        byte[] cells = new byte[(perceptualGrid + 1) * perceptualGrid];
+        small.get(0, 0, cells);
+        small.release();
+
+        long[] bits = new long[(perceptualGrid * perceptualGrid + 63) / 64];
+        int bit = 0;
+        for (int y = 0; y < perceptualGrid; y++) {
+            int row = y * (perceptualGrid + 1);
+            for (int x = 0; x < perceptualGrid; x++, bit++) {
+                if ((cells[row + x] & 0xFF) > (cells[row + x + 1] & 0xFF)) {
+                    bits[bit >> 6] |= 1L << (bit & 63);
+                }
+            }
+        }
+        return new PerceptualKey(grayImage.cols(), grayImage.rows(), bits);
+    }
+
+    /**
+     * Returns the decode of the closest recent frame within the allowed Hamming distance.
+     */
+    public synchronized ScanResult getSimilar(PerceptualKey key) {
+        long now = System.nanoTime();
+        PerceptualKey closest = null;
+        int closestDistance = perceptualMaxDistance + 1;
+        Iterator<Map.Entry<PerceptualKey, Entry>> iterator = similar.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<PerceptualKey, Entry> candidate = iterator.next();
+            if (expired(candidate.getValue(), now)) {
+                iterator.remove();
+                evictions++;
+                continue;
+            }
+            PerceptualKey other = candidate.getKey();
+            if (other.width() == key.width() && other.height() == key.height()) {
+                int distance = key.distance(other);
+                if (distance < closestDistance) {
+                    closest = other;
+                    closestDistance = distance;
+                }
+            }
+        }
+        if (closest == null) {
+            similarMisses++;
+            return null;
+        }
+        similarHits++;
+        return similar.get(closest).result();
+    }
+
+    public synchronized void putSimilar(PerceptualKey key, ScanResult result) {
+        if (!result.isDecoded()) {
+            return;
+        }
+        similar.put(key, new Entry(result, System.nanoTime() + ttlSeconds * 1_000_000_000L, 0));
+        Iterator<PerceptualKey> eldest = similar.keySet().iterator();
+        while (similar.size() > perceptualMaxEntries && eldest.hasNext()) {
+            eldest.next();
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    public synchronized ScanResult get(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        if (expired(entry, System.nanoTime())) {
+            remove(key, entry);
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.result();
+    }
+
+    public synchronized void put(String key, ScanResult result) {
+        long size = ENTRY_OVERHEAD_BYTES + 2L * (key.length()
+                + (result.text() != null ? result.text().length() : 0)
+                + (result.error() != null ? result.error().length() : 0)
+                + (result.ocrText() != null ? result.ocrText().length() : 0));
+        Entry previous = entries.put(key, new Entry(result, System.nanoTime() + ttlSeconds * 1_000_000_000L, size));
+        if (previous != null) {
+            bytes -= previous.size();
+        }
+        bytes += size;
+
+        // Access order puts the least recently used entry first
+        Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+        while ((entries.size() > maxEntries || bytes > maxBytes) && eldest.hasNext()) {
+            Entry evicted = eldest.next().getValue();
+            eldest.remove();
+            bytes -= evicted.size();
+            evictions++;
+        }
+    }
+
+    public synchronized CacheStats stats() {
+        return new CacheStats(hits, misses, similarHits, similarMisses, evictions, entries.size(), bytes);
+    }
+
+    private static boolean expired(Entry entry, long now) {
+        // Difference, not comparison, as nanoTime may wrap
+        return entry.expiresAt() - now < 0;
+    }
+
+    private void remove(String key, Entry entry) {
+        entries.remove(key);
+        bytes -= entry.size();
+        evictions++;
+    }
+}
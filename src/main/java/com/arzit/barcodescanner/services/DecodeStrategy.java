@@ -0,0 +1,34 @@
+package com.arzit.barcodescanner.services;
+
+import java.util.function.Function;
+
+/**
+ * One way of getting text out of an image, e.g. the full frame as-is or the located candidates
+ * rotated. Strategies of one scan share a {@link ScanContext}, so localisation runs at most once.
+ */
+public interface DecodeStrategy {
+
+    /**
+     * Stable name, also used as the decode path in metrics.
+     */
+    String name();
+
+    /**
+     * Returns the decoded text, or {@code null} when this strategy finds nothing.
+     */
+    String decode(ScanContext context);
+
+    static DecodeStrategy of(String name, Function<ScanContext, String> decode) {
+        return new DecodeStrategy() {
+            @Override
+            public String name() {
+                return name;
+            }
+
+            @Override
+            public String decode(ScanContext context) {
+                return decode.apply(context);
+            }
+        };
+    }
+}
@@ -0,0 +1,204 @@
+package com.arzit.barcodescanner.services;
+
+import com.arzit.barcodescanner.metrics.ScanMetrics;
+
+import jakarta.annotation.PostConstruct;
+import org.opencv.core.Mat;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs the decode strategies of a scan, most promising first, until one succeeds or the time
+ * budget runs out. When all fail on a located symbol, the {@link OcrFallback} may read the text
+ * printed beside it with what is left of the budget.
+ * <p>
+ * For every strategy a moving average of its success rate and its cost is kept, and attempts are
+ * ordered by expected successes per millisecond. A strategy that has never run is assumed to
+ * succeed half the time at the cost of the most expensive strategy seen so far, so it is explored
+ * without jumping ahead of strategies known to work. With no history, or with adaptation
+ * disabled, the declaration order below is used.
+ */
+@Service
+public class DecodeStrategyScheduler {
+
+    // Prior success rate of a strategy that has not run yet
+    private static final double PRIOR_SUCCESS = 0.5;
+    // Costs are compared at millisecond resolution, so instant failures do not dominate the order
+    private static final double MIN_COST_MS = 1;
+
+    @Autowired
+    PDF417Decoder pdf417Decoder;
+    @Autowired
+    BarcodeLocator barcodeLocator;
+    // Disabled unless configured, so schedulers built outside the context never read text
+    @Autowired
+    OcrFallback ocrFallback;
+
+    // Time budget for all strategies of one scan; the first strategy always runs. 0 means no budget
+    @Value("${barcode.decode.budget-ms:5000}")
+    long budgetMs = 5000;
+
+    @Value("${barcode.decode.adaptive:true}")
+    boolean adaptive = true;
+
+    // Weight of the newest attempt in the moving averages
+    @Value("${barcode.decode.smoothing:0.05}")
+    double smoothing = 0.05;
+
+    private List<Strategy> strategies;
+
+    public record StrategyStats(String name, long attempts, double successRate, double meanCostMs, double score) {
+    }
+
+    /**
+     * A strategy with its running statistics.
+     */
+    private final class Strategy {
+        final DecodeStrategy strategy;
+        private long attempts;
+        private double successRate = PRIOR_SUCCESS;
+        private double meanCostMs;
+
+        Strategy(DecodeStrategy strategy) {
+            this.strategy = strategy;
+        }
+
+        synchronized void record(boolean success, double costMs) {
+            successRate += smoothing * ((success ? 1 : 0) - successRate);
+            // The first cost replaces the prior outright
+            meanCostMs = attempts == 0 ? costMs : meanCostMs + smoothing * (costMs - meanCostMs);
+            attempts++;
+        }
+
+        synchronized StrategyStats stats(double priorCostMs) {
+            double cost = attempts == 0 ? priorCostMs : meanCostMs;
+            return new StrategyStats(strategy.name(), attempts, successRate, cost, successRate / Math.max(cost, MIN_COST_MS));
+        }
+    }
+
+    @PostConstruct
+    void start() {
+        List<DecodeStrategy> declared = List.of(
+                DecodeStrategy.of(ScanMetrics.FULL_FRAME, context -> pdf417Decoder.decodeFullFrame(context.image())),
+                DecodeStrategy.of(ScanMetrics.CANDIDATE,
+                        context -> pdf417Decoder.decodeCandidates(context.candidates(), context.deadline())),
+                DecodeStrategy.of(ScanMetrics.DESKEWED,
+                        context -> pdf417Decoder.decodeDeskewed(context.regions(), context.deadline())),
+                DecodeStrategy.of(ScanMetrics.INVERTED, context -> pdf417Decoder.decodeInverted(context.image())),
+                DecodeStrategy.of(ScanMetrics.GLOBAL_HISTOGRAM,
+                        context -> pdf417Decoder.decodeGlobalHistogram(context.image())));
+        use(declared);
+    }
+
+    /**
+     * Replaces the strategies, in declaration order, and forgets all statistics.
+     */
+    void use(List<DecodeStrategy> declared) {
+        strategies = declared.stream().map(Strategy::new).toList();
+    }
+
+    /**
+     * Forgets all statistics, keeping the strategies; the next scan uses the declaration order.
+     */
+    public void resetStatistics() {
+        use(strategies.stream().map(strategy -> strategy.strategy).toList());
+    }
+
+    /**
+     * The earlier of {@code deadline} and the time budget starting now. Scans that decode several
+     * images compute it once, so the budget covers the whole scan rather than each image.
+     */
+    public Deadline budgeted(Deadline deadline) {
+        return budgetMs > 0 ? deadline.earliest(Deadline.after(Duration.ofMillis(budgetMs))) : deadline;
+    }
+
+    /**
+     * Decodes a grayscale image, stopping at the earlier of {@code deadline} and the time budget.
+     */
+    public ScanResult decode(Mat image, Deadline deadline) {
+        Deadline effective = budgeted(deadline);
+        try (ScanContext context = new ScanContext(image, effective, barcodeLocator)) {
+            boolean first = true;
+            for (Strategy strategy : schedule()) {
+                if (!first && effective.expired()) {
+                    return ScanResult.failed(ScanResult.DEADLINE_EXCEEDED);
+                }
+                first = false;
+
+                long start = System.nanoTime();
+                long locatedBefore = context.locateNanos();
+                String text = strategy.strategy.decode(context);
+                // Localisation is shared by every later strategy, so it is not part of this one's cost
+                long costNanos = System.nanoTime() - start - (context.locateNanos() - locatedBefore);
+                boolean success = text != null && !text.isEmpty();
+                // An attempt cut short by the deadline says little about the strategy
+                if (success || !effective.expired()) {
+                    strategy.record(success, costNanos / 1e6);
+                }
+                if (success) {
+                    return ScanResult.decoded(text);
+                }
+            }
+            if (effective.expired()) {
+                return ScanResult.failed(ScanResult.DEADLINE_EXCEEDED);
+            }
+            if (context.noCandidates()) {
+                return ScanResult.failed(ScanResult.NO_BARCODE);
+            }
+            // A symbol was located but did not decode: read the text printed beside it, if time allows
+            return ScanResult.failed(ScanResult.NO_VALID_BARCODE)
+                    .withOcrText(ocrFallback.read(image, context.symbol(), effective));
+        }
+    }
+
+    /**
+     * Current statistics in the order the next scan would try the strategies.
+     */
+    public List<StrategyStats> stats() {
+        double priorCost = priorCostMs();
+        List<StrategyStats> stats = new ArrayList<>();
+        for (Strategy strategy : schedule()) {
+            stats.add(strategy.stats(priorCost));
+        }
+        return stats;
+    }
+
+    private List<Strategy> schedule() {
+        if (!adaptive) {
+            return strategies;
+        }
+        double priorCost = priorCostMs();
+        // Scores are snapshotted, as other scans update them concurrently
+        Map<Strategy, Double> scores = new IdentityHashMap<>();
+        for (Strategy strategy : strategies) {
+            scores.put(strategy, strategy.stats(priorCost).score());
+        }
+        List<Strategy> ordered = new ArrayList<>(strategies);
+        // Stable sort: equal scores keep the declaration order
+        ordered.sort(Comparator.comparingDouble((Strategy strategy) -> -scores.get(strategy)));
+        return ordered;
+    }
+
+    List<String> scheduleNames() {
+        return schedule().stream().map(s -> s.strategy.name()).toList();
+    }
+
+    private double priorCostMs() {
+        double max = MIN_COST_MS;
+        for (Strategy strategy : strategies) {
+            StrategyStats stats = strategy.stats(0);
+            if (stats.attempts() > 0) {
+                max = Math.max(max, stats.meanCostMs());
+            }
+        }
+        return max;
+    }
+}
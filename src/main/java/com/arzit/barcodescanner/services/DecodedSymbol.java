@@ -0,0 +1,40 @@
+package com.arzit.barcodescanner.services;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * One decoded symbol with its bounding box in the coordinates of the scanned image.
+ */
+public record DecodedSymbol(String text, int x, int y, int width, int height) {
+
+    // Symbols with the same text whose boxes overlap by more than this are the same symbol
+    private static final double SAME_SYMBOL_OVERLAP = 0.5;
+
+    /**
+     * Drops symbols found again in an overlapping region and sorts the rest top to bottom, then
+     * left to right. Equal texts at different positions are kept: a page may repeat a symbol.
+     */
+    static List<DecodedSymbol> distinct(List<DecodedSymbol> symbols) {
+        List<DecodedSymbol> distinct = new ArrayList<>(symbols.size());
+        for (DecodedSymbol symbol : symbols) {
+            if (distinct.stream().noneMatch(kept -> kept.text.equals(symbol.text)
+                    && kept.overlap(symbol) > SAME_SYMBOL_OVERLAP)) {
+                distinct.add(symbol);
+            }
+        }
+        distinct.sort(Comparator.comparingInt(DecodedSymbol::y).thenComparingInt(DecodedSymbol::x));
+        return distinct;
+    }
+
+    /**
+     * Intersection over the smaller of the two boxes.
+     */
+    double overlap(DecodedSymbol other) {
+        long ix = Math.max(0, Math.min(x + width, other.x + other.width) - Math.max(x, other.x));
+        long iy = Math.max(0, Math.min(y + height, other.y + other.height) - Math.max(y, other.y));
+        long smaller = Math.min((long) width * height, (long) other.width * other.height);
+        return smaller == 0 ? 0 : ix * (double) iy / smaller;
+    }
+}
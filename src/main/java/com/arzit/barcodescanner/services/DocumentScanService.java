@@ -0,0 +1,291 @@
+package com.arzit.barcodescanner.services;
+
+import com.arzit.barcodescanner.metrics.ScanMetrics;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import io.micrometer.observation.Observation;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.rendering.ImageType;
+import org.apache.pdfbox.rendering.PDFRenderer;
+import org.opencv.core.Mat;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Scans every page of a multi-page document: a PDF, or any image format ImageIO reads several
+ * images from, such as multi-page TIFF.
+ * <p>
+ * Pages are rasterized lazily, one after another on the calling thread, since neither PDFBox
+ * documents nor ImageIO readers may be shared between threads. Each page is handed to a worker
+ * pool and scanned like a single upload, so rasterizing the next page overlaps decoding the
+ * previous ones. At most {@code threads} pages are held at once. Once the requested number of
+ * barcodes is found no further pages are rasterized; pages already being scanned still finish and
+ * are reported.
+ */
+@Service
+public class DocumentScanService {
+
+    private static final byte[] PDF_MAGIC = "%PDF-".getBytes(StandardCharsets.US_ASCII);
+    // PDF readers accept the header anywhere in the first kilobyte
+    private static final int PDF_MAGIC_WINDOW = 1024;
+
+    @Autowired
+    PDF417ScanService pdf417ScanService;
+    @Autowired
+    ScanMetrics scanMetrics;
+
+    // Pages scanned at once per document, and worker threads; 0 means one per available core
+    @Value("${barcode.document.threads:0}")
+    int threads;
+
+    @Value("${barcode.document.max-pages:500}")
+    int maxPages = 500;
+
+    // PDF pages are rendered at this resolution, lowered for pages that would exceed max-pixels
+    @Value("${barcode.document.dpi:300}")
+    float dpi = 300;
+
+    @Value("${barcode.upload.max-pixels:40000000}")
+    long maxPixels = 40_000_000;
+
+    private int parallelism;
+    private ExecutorService pagePool;
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public record PageResult(int page, String text, String error, long elapsedMs) {
+    }
+
+    /**
+     * Per-page results in page order, for the pages that were scanned.
+     */
+    public record DocumentResult(int pages, int decoded, boolean stoppedEarly, List<PageResult> results) {
+    }
+
+    @PostConstruct
+    void start() {
+        parallelism = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger counter = new AtomicInteger();
+        // Each document keeps at most parallelism pages queued, so the queue only fills when
+        // many documents arrive at once; the rasterizing thread then scans the page itself
+        pagePool = new ThreadPoolExecutor(parallelism, parallelism, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(parallelism * 4),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "pdf417-page-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    @PreDestroy
+    void stop() {
+        pagePool.shutdownNow();
+    }
+
+    /**
+     * Scans the pages of a document in order until {@code stopAfter} barcodes are found;
+     * 0 scans every page.
+     *
+     * @throws IOException when the upload is not a document that can be read
+     * @throws ImageRejectedException when it has more pages than allowed
+     */
+    public DocumentResult scan(byte[] upload, int stopAfter) throws IOException {
+        try (Pages pages = open(upload)) {
+            int count = pages.count();
+            if (count > maxPages) {
+                throw new ImageRejectedException("Document of " + count + " pages exceeds the limit of " + maxPages + " pages.");
+            }
+            return scanMetrics.scan("document", () -> scan(pages, count, stopAfter),
+                    result -> result.decoded() > 0 ? null : ScanResult.NO_BARCODE);
+        }
+    }
+
+    private DocumentResult scan(Pages pages, int count, int stopAfter) {
+        List<PageResult> results = new CopyOnWriteArrayList<>();
+        AtomicInteger decoded = new AtomicInteger();
+        Semaphore inFlight = new Semaphore(parallelism);
+        List<Future<?>> scans = new ArrayList<>();
+        Observation parent = scanMetrics.currentObservation();
+        boolean stoppedEarly = false;
+        try {
+            for (int page = 0; page < count; page++) {
+                inFlight.acquire();
+                if (stopAfter > 0 && decoded.get() >= stopAfter) {
+                    inFlight.release();
+                    stoppedEarly = true;
+                    break;
+                }
+                int number = page + 1;
+                long start = System.nanoTime();
+                Mat image;
+                try {
+                    image = scanMetrics.stage(ScanMetrics.INGEST, null, () -> render(pages, number), Mat::empty);
+                } catch (RuntimeException e) {
+                    results.add(new PageResult(number, null, pageError(e), elapsedMs(start)));
+                    inFlight.release();
+                    continue;
+                }
+                scans.add(pagePool.submit(scanMetrics.scoped(parent, () -> {
+                    try {
+                        ScanResult result = pdf417ScanService.scan(image);
+                        if (result.isDecoded()) {
+                            decoded.incrementAndGet();
+                        }
+                        results.add(new PageResult(number, result.text(), result.error(), elapsedMs(start)));
+                    } catch (RuntimeException e) {
+                        // One page failing says nothing about the others
+                        results.add(new PageResult(number, null, "Error processing the image: " + e.getMessage(),
+                                elapsedMs(start)));
+                    } finally {
+                        image.release();
+                        inFlight.release();
+                    }
+                })));
+            }
+            for (Future<?> scan : scans) {
+                scan.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            scans.forEach(scan -> scan.cancel(true));
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Page scan failed", e.getCause());
+        }
+
+        List<PageResult> ordered = new ArrayList<>(results);
+        ordered.sort(Comparator.comparingInt(PageResult::page));
+        return new DocumentResult(count, decoded.get(), stoppedEarly, ordered);
+    }
+
+    private Mat render(Pages pages, int number) {
+        try {
+            return pages.render(number - 1);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String pageError(RuntimeException e) {
+        if (e instanceof ImageRejectedException) {
+            return e.getMessage();
+        }
+        return ScanResult.UNREADABLE_IMAGE;
+    }
+
+    private static long elapsedMs(long start) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    private Pages open(byte[] upload) throws IOException {
+        if (isPdf(upload)) {
+            return new PdfPages(PDDocument.load(upload));
+        }
+        ImageInputStream input = RasterImages.open(upload);
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+        if (!readers.hasNext()) {
+            input.close();
+            throw new IOException("Unsupported document format");
+        }
+        ImageReader reader = readers.next();
+        reader.setInput(input, false, true);
+        return new ImagePages(reader, input);
+    }
+
+    static boolean isPdf(byte[] upload) {
+        int window = Math.min(upload.length, PDF_MAGIC_WINDOW) - PDF_MAGIC.length;
+        for (int offset = 0; offset <= window; offset++) {
+            if (Arrays.equals(upload, offset, offset + PDF_MAGIC.length, PDF_MAGIC, 0, PDF_MAGIC.length)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Pages of an open document, rasterized to grayscale on demand by a single thread.
+     */
+    private interface Pages extends AutoCloseable {
+        int count() throws IOException;
+
+        Mat render(int index) throws IOException;
+
+        @Override
+        void close() throws IOException;
+    }
+
+    private final class PdfPages implements Pages {
+        private final PDDocument document;
+        private final PDFRenderer renderer;
+
+        PdfPages(PDDocument document) {
+            this.document = document;
+            this.renderer = new PDFRenderer(document);
+        }
+
+        @Override
+        public int count() {
+            return document.getNumberOfPages();
+        }
+
+        @Override
+        public Mat render(int index) throws IOException {
+            PDRectangle box = document.getPage(index).getCropBox();
+            double pixels = box.getWidth() / 72.0 * dpi * (box.getHeight() / 72.0 * dpi);
+            float pageDpi = pixels > maxPixels ? (float) (dpi * Math.sqrt(maxPixels / pixels)) : dpi;
+            return RasterImages.toGray(renderer.renderImageWithDPI(index, pageDpi, ImageType.GRAY));
+        }
+
+        @Override
+        public void close() throws IOException {
+            document.close();
+        }
+    }
+
+    private final class ImagePages implements Pages {
+        private final ImageReader reader;
+        private final ImageInputStream input;
+
+        ImagePages(ImageReader reader, ImageInputStream input) {
+            this.reader = reader;
+            this.input = input;
+        }
+
+        @Override
+        public int count() throws IOException {
+            return reader.getNumImages(true);
+        }
+
+        @Override
+        public Mat render(int index) throws IOException {
+            long pixels = (long) reader.getWidth(index) * reader.getHeight(index);
+            if (pixels > maxPixels) {
+                throw new ImageRejectedException("Page of " + pixels + " pixels exceeds the limit of " + maxPixels + " pixels.");
+            }
+            return RasterImages.toGray(reader.read(index));
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.dispose();
+            input.close();
+        }
+    }
+}
@@ -0,0 +1,348 @@
+package com.arzit.barcodescanner.services;
+
+import com.arzit.barcodescanner.metrics.ScanMetrics;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Decodes live video streams, such as a camera watching a conveyor, frame by frame.
+ * <p>
+ * Consecutive frames show the same symbols in nearly the same place, so a session only localises
+ * with the {@link BarcodeLocator} on keyframes, every {@code keyframe-interval} frames, or when
+ * tracking is lost. In between it decodes just the boxes found last time, grown by
+ * {@code roi-margin} to follow the motion. A session holds at most the frame being decoded and the
+ * newest one waiting; a frame arriving while another waits replaces it, so a slow decoder skips
+ * frames instead of falling behind the camera. A symbol is reported when it appears and not again
+ * until it has been out of sight for {@code repeat-window-ms}.
+ */
+@Service
+public class FrameStreamService {
+
+    @Autowired
+    ImageIngestionService imageIngestionService;
+    @Autowired
+    BarcodeLocator barcodeLocator;
+    @Autowired
+    PDF417Decoder pdf417Decoder;
+    @Autowired
+    ScanMetrics scanMetrics;
+
+    // Frames decoded at once across all streams; 0 means one per available core
+    @Value("${barcode.stream.threads:0}")
+    int threads;
+
+    @Value("${barcode.stream.max-sessions:64}")
+    int maxSessions = 64;
+
+    @Value("${barcode.stream.keyframe-interval:30}")
+    int keyframeInterval = 30;
+
+    // Tracked boxes grow by this fraction of their size on every side
+    @Value("${barcode.stream.roi-margin:0.5}")
+    double roiMargin = 0.5;
+
+    @Value("${barcode.stream.repeat-window-ms:2000}")
+    long repeatWindowMs = 2000;
+
+    @Value("${barcode.multi.max-candidates:8}")
+    int maxCandidates = 8;
+
+    @Value("${barcode.upload.max-bytes:20971520}")
+    int maxFrameBytes = 20 * 1024 * 1024;
+
+    private ExecutorService readerPool;
+    private ExecutorService framePool;
+
+    /**
+     * A symbol seen for the first time in a while, with its box in frame coordinates.
+     */
+    public record StreamEvent(long frame, String text, int x, int y, int width, int height, boolean keyframe) {
+    }
+
+    /**
+     * Totals for a finished stream; {@code error} is set when the stream ended on bad input.
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public record StreamSummary(long frames, long processed, long dropped, long keyframes, long symbols, String error) {
+    }
+
+    @PostConstruct
+    void start() {
+        int workers = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger readers = new AtomicInteger();
+        // One blocking reader per open stream; a stream beyond max-sessions is rejected
+        readerPool = new ThreadPoolExecutor(0, maxSessions, 60L, TimeUnit.SECONDS, new SynchronousQueue<>(),
+                runnable -> daemon(runnable, "pdf417-stream-reader-" + readers.incrementAndGet()));
+        AtomicInteger workersCreated = new AtomicInteger();
+        // Each session has at most one drain task queued or running, so the queue cannot overflow
+        framePool = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(maxSessions),
+                runnable -> daemon(runnable, "pdf417-stream-" + workersCreated.incrementAndGet()));
+    }
+
+    @PreDestroy
+    void stop() {
+        readerPool.shutdownNow();
+        framePool.shutdownNow();
+    }
+
+    private static Thread daemon(Runnable runnable, String name) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    /**
+     * Reads MJPEG frames from {@code body} on a reader thread without blocking the caller.
+     * {@code events} receives new symbols from a decode thread; {@code onComplete} receives the
+     * totals once the body ends and every accepted frame is decoded. The returned session can be
+     * closed to stop early.
+     *
+     * @throws RejectedExecutionException when max-sessions streams are already open
+     */
+    public Session stream(InputStream body, Consumer<StreamEvent> events, Consumer<StreamSummary> onComplete) {
+        Session session = open(events);
+        readerPool.execute(() -> onComplete.accept(read(body, session)));
+        return session;
+    }
+
+    /**
+     * Feeds every frame of {@code body} to {@code session} and waits for them to be decoded.
+     */
+    StreamSummary read(InputStream body, Session session) {
+        String error = null;
+        try {
+            MjpegFrameReader frames = new MjpegFrameReader(body, maxFrameBytes);
+            byte[] jpeg;
+            while (!session.isClosed() && (jpeg = frames.next()) != null) {
+                session.offer(jpeg);
+            }
+        } catch (IOException e) {
+            error = e.getMessage();
+        }
+        return session.finish(error);
+    }
+
+    public Session open(Consumer<StreamEvent> events) {
+        return new Session(events);
+    }
+
+    /**
+     * Boxes to decode on the next frame: each symbol's box grown by {@code margin} of its size on
+     * every side, clipped to the frame.
+     */
+    static Rect track(DecodedSymbol symbol, double margin, int cols, int rows) {
+        int growX = (int) Math.ceil(symbol.width() * margin);
+        int growY = (int) Math.ceil(symbol.height() * margin);
+        int x = Math.max(0, symbol.x() - growX);
+        int y = Math.max(0, symbol.y() - growY);
+        int right = Math.min(cols, symbol.x() + symbol.width() + growX);
+        int bottom = Math.min(rows, symbol.y() + symbol.height() + growY);
+        return new Rect(x, y, Math.max(0, right - x), Math.max(0, bottom - y));
+    }
+
+    /**
+     * One video stream. Frames are offered from one thread and decoded in arrival order on the
+     * frame pool, one at a time; the tracking state is only touched by that decode.
+     */
+    public final class Session {
+
+        private record Frame(long number, byte[] jpeg) {
+        }
+
+        private final Consumer<StreamEvent> events;
+        private final AtomicReference<Frame> pending = new AtomicReference<>();
+        private final AtomicBoolean draining = new AtomicBoolean();
+        private volatile boolean closed;
+
+        private final AtomicLong received = new AtomicLong();
+        private final AtomicLong processed = new AtomicLong();
+        private final AtomicLong dropped = new AtomicLong();
+        private final AtomicLong keyframes = new AtomicLong();
+        private final AtomicLong symbols = new AtomicLong();
+
+        private List<Rect> tracked = List.of();
+        private int sinceKeyframe;
+        // Text to when it was last seen, for repeat suppression
+        private final Map<String, Long> lastSeen = new HashMap<>();
+
+        private Session(Consumer<StreamEvent> events) {
+            this.events = events;
+        }
+
+        /**
+         * Queues an encoded frame, replacing a frame still waiting to be decoded.
+         */
+        public void offer(byte[] jpeg) {
+            if (closed) {
+                return;
+            }
+            Frame previous = pending.getAndSet(new Frame(received.incrementAndGet(), jpeg));
+            if (previous != null) {
+                dropped.incrementAndGet();
+            }
+            schedule();
+        }
+
+        public boolean isClosed() {
+            return closed;
+        }
+
+        /**
+         * Stops accepting frames; a frame being decoded still finishes.
+         */
+        public void close() {
+            closed = true;
+            if (pending.getAndSet(null) != null) {
+                dropped.incrementAndGet();
+            }
+        }
+
+        /**
+         * Waits until every accepted frame is decoded, then closes the session.
+         */
+        public StreamSummary finish(String error) {
+            awaitIdle();
+            close();
+            return new StreamSummary(received.get(), processed.get(), dropped.get(), keyframes.get(),
+                    symbols.get(), error);
+        }
+
+        synchronized void awaitIdle() {
+            try {
+                while (draining.get() || pending.get() != null) {
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void schedule() {
+            if (draining.compareAndSet(false, true)) {
+                try {
+                    framePool.execute(this::drain);
+                } catch (RejectedExecutionException e) {
+                    draining.set(false);
+                    close();
+                }
+            }
+        }
+
+        private void drain() {
+            try {
+                Frame frame;
+                while (!closed && (frame = pending.getAndSet(null)) != null) {
+                    process(frame);
+                }
+            } finally {
+                draining.set(false);
+                // A frame offered after the last poll but before the flag was cleared
+                if (!closed && pending.get() != null) {
+                    schedule();
+                }
+                synchronized (this) {
+                    notifyAll();
+                }
+            }
+        }
+
+        private void process(Frame frame) {
+            processed.incrementAndGet();
+            scanMetrics.scan("stream", () -> decode(frame),
+                    found -> found.isEmpty() ? ScanResult.NO_BARCODE : null);
+        }
+
+        private List<DecodedSymbol> decode(Frame frame) {
+            try (MatScope scope = MatScope.open()) {
+                Mat gray;
+                try {
+                    gray = scope.track(imageIngestionService.decode(frame.jpeg()));
+                } catch (RuntimeException e) {
+                    // One bad frame does not end the stream
+                    return List.of();
+                }
+                if (gray.empty()) {
+                    return List.of();
+                }
+
+                boolean keyframe = tracked.isEmpty() || sinceKeyframe >= keyframeInterval;
+                List<DecodedSymbol> found = keyframe ? List.of() : decodeTracked(gray, scope);
+                if (found.isEmpty()) {
+                    // Keyframe due, or the symbols moved out of their boxes
+                    keyframe = true;
+                    found = localise(gray, scope);
+                }
+                if (keyframe) {
+                    keyframes.incrementAndGet();
+                    sinceKeyframe = 0;
+                } else {
+                    sinceKeyframe++;
+                }
+
+                List<Rect> next = new ArrayList<>(found.size());
+                for (DecodedSymbol symbol : found) {
+                    Rect box = track(symbol, roiMargin, gray.cols(), gray.rows());
+                    if (box.width > 0 && box.height > 0) {
+                        next.add(box);
+                    }
+                }
+                tracked = next;
+                report(frame.number(), found, keyframe);
+                return found;
+            }
+        }
+
+        private List<DecodedSymbol> decodeTracked(Mat gray, MatScope scope) {
+            List<DecodedSymbol> found = new ArrayList<>();
+            for (Rect box : tracked) {
+                Mat region = scope.track(gray.submat(box));
+                found.addAll(scanMetrics.attempt(ScanMetrics.TRACKED, null,
+                        () -> pdf417Decoder.decodeSymbols(region), decoded -> !decoded.isEmpty()));
+            }
+            return DecodedSymbol.distinct(found);
+        }
+
+        private List<DecodedSymbol> localise(Mat gray, MatScope scope) {
+            List<Mat> regions = new ArrayList<>();
+            regions.add(gray);
+            regions.addAll(scope.trackAll(scanMetrics.stage(ScanMetrics.LOCATE, null,
+                    () -> barcodeLocator.cropImageBarcode(gray, maxCandidates), List::isEmpty)));
+            return DecodedSymbol.distinct(pdf417Decoder.decodeAll(regions, Deadline.none()));
+        }
+
+        private void report(long number, List<DecodedSymbol> found, boolean keyframe) {
+            long now = System.nanoTime();
+            long window = TimeUnit.MILLISECONDS.toNanos(repeatWindowMs);
+            lastSeen.values().removeIf(seen -> now - seen > window);
+            for (DecodedSymbol symbol : found) {
+                // Seeing a symbol again extends its window, so it is reported once per appearance
+                if (lastSeen.put(symbol.text(), now) == null) {
+                    symbols.incrementAndGet();
+                    events.accept(new StreamEvent(number, symbol.text(), symbol.x(), symbol.y(),
+                            symbol.width(), symbol.height(), keyframe));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,417 @@
+package com.arzit.barcodescanner.services;
+
+import com.arzit.barcodescanner.metrics.ScanMetrics;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decodes uploaded image bytes into a grayscale {@link Mat} entirely in memory.
+ * <p>
+ * Byte and pixel limits are enforced before any pixel data is decoded: the pixel count is read
+ * from the image header only, through ImageIO or, for PNM and WebP, which OpenCV decodes but
+ * ImageIO cannot read, by parsing the header here. Uploads whose dimensions cannot be read are
+ * not decoded, so no format slips past the pixel limit.
+ * <p>
+ * Encoded bytes are staged in a native buffer taken from a small pool and returned after the
+ * decode, so the common case performs no native allocation besides the result. The pool is shared
+ * rather than per thread, as jobs run on short-lived virtual threads whose buffers would otherwise
+ * only be freed by finalization.
+ * <p>
+ * Uploads over the in-memory limits but within the large-image limits are not decoded here; they
+ * are scanned tile by tile by the {@link TiledImageScanner}.
+ * <p>
+ * Raw 8-bit grayscale frames skip the codec altogether: the body is streamed row by row straight
+ * into the Mat.
+ */
+@Service
+public class ImageIngestionService {
+
+    // Uploads up to this size use a pooled staging buffer; larger ones get a one-off buffer
+    private static final int REUSABLE_BUFFER_LIMIT = 4 * 1024 * 1024;
+    // Raw frames are copied into the Mat in chunks of about this many bytes
+    private static final int RAW_CHUNK_BYTES = 64 * 1024;
+
+    private final Deque<Mat> stagingPool = new ConcurrentLinkedDeque<>();
+    // Native bytes held by pooled staging buffers, idle or in use
+    private final AtomicLong stagingBytes = new AtomicLong();
+
+    // Idle staging buffers kept for reuse; 0 means one per available core
+    @Value("${barcode.native.scratch-pool-size:0}")
+    int stagingPoolSize;
+
+    @Autowired
+    ScanMetrics scanMetrics = ScanMetrics.noop();
+
+    @Value("${barcode.upload.max-bytes:20971520}")
+    long maxBytes = 20L * 1024 * 1024;
+
+    @Value("${barcode.upload.max-pixels:40000000}")
+    long maxPixels = 40_000_000;
+
+    // Large-image mode: uploads up to these limits are scanned in tiles; 0 pixels disables it
+    @Value("${barcode.large.max-bytes:209715200}")
+    long largeMaxBytes = 200L * 1024 * 1024;
+
+    @Value("${barcode.large.max-pixels:1000000000}")
+    long largeMaxPixels = 1_000_000_000;
+
+    public Mat decode(MultipartFile file) throws IOException {
+        return decode(read(file));
+    }
+
+    /**
+     * Returns the upload bytes, refusing uploads over the byte limit before reading them.
+     */
+    public byte[] read(MultipartFile file) throws IOException {
+        long limit = largeMaxPixels > 0 ? Math.max(maxBytes, largeMaxBytes) : maxBytes;
+        if (file.getSize() > limit) {
+            throw new ImageRejectedException("Upload of " + file.getSize() + " bytes exceeds the limit of " + limit + " bytes.");
+        }
+        return file.getBytes();
+    }
+
+    /**
+     * Pixel count read from an image header, and whether ImageIO can read regions of the image,
+     * which scanning it in tiles needs. {@code pixels} is -1 when no supported header is recognised.
+     */
+    public record ImageHeader(long pixels, boolean tileable) {
+    }
+
+    /**
+     * Reads the upload's header once, for {@link #requiresTiling(byte[], ImageHeader)} and
+     * {@link #decode(byte[], ImageHeader)}.
+     */
+    public ImageHeader probe(byte[] bytes) {
+        return header(bytes);
+    }
+
+    public boolean requiresTiling(byte[] bytes) {
+        return requiresTiling(bytes, probe(bytes));
+    }
+
+    /**
+     * True when the upload is over the in-memory limits but within the large-image limits, so it
+     * has to be scanned tile by tile. Uploads over every limit are refused; with large-image mode
+     * disabled this is always false and {@link #decode(byte[])} refuses them instead.
+     */
+    public boolean requiresTiling(byte[] bytes, ImageHeader header) {
+        if (largeMaxPixels <= 0 || bytes.length == 0) {
+            return false;
+        }
+        long pixels = header.pixels();
+        if (bytes.length <= maxBytes && pixels <= maxPixels) {
+            return false;
+        }
+        if (!header.tileable()) {
+            // No ImageIO reader for region reads; the in-memory path refuses it by size or header
+            return false;
+        }
+        if (bytes.length > largeMaxBytes) {
+            throw new ImageRejectedException("Upload of " + bytes.length + " bytes exceeds the limit of " + largeMaxBytes + " bytes.");
+        }
+        if (pixels > largeMaxPixels) {
+            throw new ImageRejectedException("Image of " + pixels + " pixels exceeds the limit of " + largeMaxPixels + " pixels.");
+        }
+        return true;
+    }
+
+    /**
+     * True when an upload of {@code size} bytes can only be scanned tile by tile, so it is known
+     * to need large-image memory before it is read.
+     */
+    public boolean requiresTiling(long size) {
+        return largeMaxPixels > 0 && size > maxBytes;
+    }
+
+    public Mat decode(byte[] bytes) {
+        return scanMetrics.stage(ScanMetrics.INGEST, null, () -> stage(bytes, null), Mat::empty);
+    }
+
+    /**
+     * Decodes an upload whose header was already read by {@link #probe}.
+     */
+    public Mat decode(byte[] bytes, ImageHeader header) {
+        return scanMetrics.stage(ScanMetrics.INGEST, null, () -> stage(bytes, header), Mat::empty);
+    }
+
+    private Mat stage(byte[] bytes, ImageHeader header) {
+        if (bytes.length > maxBytes) {
+            throw new ImageRejectedException("Upload of " + bytes.length + " bytes exceeds the limit of " + maxBytes + " bytes.");
+        }
+        if (bytes.length == 0) {
+            return new Mat();
+        }
+        long pixels = (header != null ? header : header(bytes)).pixels();
+        if (pixels < 0) {
+            // Could be anything up to a decompression bomb; reported like a corrupt image
+            return new Mat();
+        }
+        if (pixels > maxPixels) {
+            throw new ImageRejectedException("Image of " + pixels + " pixels exceeds the limit of " + maxPixels + " pixels.");
+        }
+
+        boolean reusable = bytes.length <= REUSABLE_BUFFER_LIMIT;
+        Mat buffer = reusable ? acquireStaging() : new Mat(1, bytes.length, CvType.CV_8UC1);
+        buffer.put(0, 0, bytes);
+
+        Mat encoded = buffer.colRange(0, bytes.length);
+        try {
+            Mat image = Imgcodecs.imdecode(encoded, Imgcodecs.IMREAD_GRAYSCALE);
+            scanMetrics.recordImage(bytes.length, image.total());
+            return image;
+        } finally {
+            encoded.release();
+            if (reusable) {
+                recycleStaging(buffer);
+            } else {
+                buffer.release();
+            }
+        }
+    }
+
+    private Mat acquireStaging() {
+        Mat buffer = stagingPool.pollFirst();
+        if (buffer == null) {
+            buffer = new Mat(1, REUSABLE_BUFFER_LIMIT, CvType.CV_8UC1);
+            stagingBytes.addAndGet(REUSABLE_BUFFER_LIMIT);
+        }
+        return buffer;
+    }
+
+    private void recycleStaging(Mat buffer) {
+        int capacity = stagingPoolSize > 0 ? stagingPoolSize : Runtime.getRuntime().availableProcessors();
+        if (stagingPool.size() < capacity) {
+            stagingPool.offerFirst(buffer);
+        } else {
+            buffer.release();
+            stagingBytes.addAndGet(-REUSABLE_BUFFER_LIMIT);
+        }
+    }
+
+    /**
+     * Reads a raw 8-bit grayscale frame of {@code height} rows starting {@code stride} bytes apart,
+     * of which the first {@code width} are pixels. The padding after the last row may be omitted.
+     * {@code length} is the body length when known, or -1.
+     *
+     * @throws IllegalArgumentException when the geometry is invalid or the body is too short
+     * @throws ImageRejectedException when the frame exceeds the pixel or byte limit
+     */
+    public Mat readRaw(InputStream body, long length, int width, int height, int stride) throws IOException {
+        if (width <= 0 || height <= 0 || stride < width) {
+            throw new IllegalArgumentException("Invalid frame geometry " + width + "x" + height + " with stride " + stride + ".");
+        }
+        long pixels = (long) width * height;
+        if (pixels > maxPixels) {
+            throw new ImageRejectedException("Image of " + pixels + " pixels exceeds the limit of " + maxPixels + " pixels.");
+        }
+        long minimum = (long) stride * (height - 1) + width;
+        long maximum = (long) stride * height;
+        // The full stride counts, so a huge stride cannot pass on a frame of one short row
+        if (maximum > maxBytes) {
+            throw new ImageRejectedException("Frame of " + maximum + " bytes exceeds the limit of " + maxBytes + " bytes.");
+        }
+        if (length >= 0 && (length < minimum || length > maximum)) {
+            throw new IllegalArgumentException("Frame body of " + length + " bytes does not match " + width + "x" + height
+                    + " with stride " + stride + " (" + minimum + " to " + maximum + " bytes).");
+        }
+
+        return scanMetrics.stage(ScanMetrics.INGEST, null, () -> {
+            Mat frame = new Mat(height, width, CvType.CV_8UC1);
+            try {
+                copyRows(body, frame, stride);
+            } catch (IOException e) {
+                frame.release();
+                throw new IllegalArgumentException("Frame body ended early: " + e.getMessage());
+            }
+            scanMetrics.recordImage(length >= 0 ? length : minimum, pixels);
+            return frame;
+        }, Mat::empty);
+    }
+
+    private static void copyRows(InputStream body, Mat frame, int stride) throws IOException {
+        if (stride > RAW_CHUNK_BYTES) {
+            copyWideRows(body, frame, stride);
+            return;
+        }
+        int width = frame.cols();
+        int height = frame.rows();
+        int rowsPerChunk = Math.max(1, Math.min(height, RAW_CHUNK_BYTES / stride));
+        byte[] chunk = new byte[rowsPerChunk * stride];
+        for (int row = 0; row < height; row += rowsPerChunk) {
+            int rows = Math.min(rowsPerChunk, height - row);
+            // The final row needs no padding
+            int needed = (rows - 1) * stride + width;
+            int read = body.readNBytes(chunk, 0, row + rows < height ? rows * stride : needed);
+            if (read < needed) {
+                throw new EOFException("got " + read + " of " + needed + " bytes at row " + row);
+            }
+            if (stride == width) {
+                frame.put(row, 0, chunk, 0, rows * width);
+            } else {
+                for (int i = 0; i < rows; i++) {
+                    frame.put(row + i, 0, chunk, i * stride, width);
+                }
+            }
+        }
+    }
+
+    /**
+     * Copies rows whose stride exceeds a chunk a piece at a time, skipping their padding.
+     */
+    private static void copyWideRows(InputStream body, Mat frame, int stride) throws IOException {
+        int width = frame.cols();
+        int height = frame.rows();
+        byte[] chunk = new byte[Math.min(width, RAW_CHUNK_BYTES)];
+        for (int row = 0; row < height; row++) {
+            for (int col = 0; col < width; col += chunk.length) {
+                int needed = Math.min(chunk.length, width - col);
+                int read = body.readNBytes(chunk, 0, needed);
+                if (read < needed) {
+                    throw new EOFException("got " + read + " of " + needed + " bytes at row " + row);
+                }
+                frame.put(row, col, chunk, 0, needed);
+            }
+            // The final row needs no padding
+            if (row + 1 < height) {
+                body.skipNBytes(stride - width);
+            }
+        }
+    }
+
+    /**
+     * Native bytes held by the pooled staging buffers.
+     */
+    public long stagingBytes() {
+        return stagingBytes.get();
+    }
+
+    /**
+     * Width times height from the image header, or -1 when no supported header is recognised.
+     */
+    static long headerPixelCount(byte[] bytes) {
+        return header(bytes).pixels();
+    }
+
+    private static ImageHeader header(byte[] bytes) {
+        long pixels = probePixelCount(bytes);
+        if (pixels > 0) {
+            return new ImageHeader(pixels, true);
+        }
+        pixels = pnmPixelCount(bytes);
+        return new ImageHeader(pixels >= 0 ? pixels : webpPixelCount(bytes), false);
+    }
+
+    /**
+     * Dimensions of a PBM, PGM or PPM header (P1 to P6): the magic number, then width and height
+     * as decimal numbers separated by whitespace and comments. -1 when it is not such a header.
+     */
+    private static long pnmPixelCount(byte[] bytes) {
+        if (bytes.length < 2 || bytes[0] != 'P' || bytes[1] < '1' || bytes[1] > '6') {
+            return -1;
+        }
+        int[] position = {2};
+        long width = pnmNumber(bytes, position);
+        long height = pnmNumber(bytes, position);
+        return width < 0 || height < 0 ? -1 : width * height;
+    }
+
+    private static long pnmNumber(byte[] bytes, int[] position) {
+        int i = position[0];
+        while (i < bytes.length && (Character.isWhitespace(bytes[i]) || bytes[i] == '#')) {
+            if (bytes[i] == '#') {
+                while (i < bytes.length && bytes[i] != '\n' && bytes[i] != '\r') {
+                    i++;
+                }
+            } else {
+                i++;
+            }
+        }
+        long value = 0;
+        int start = i;
+        // Ten digits already exceed any pixel limit; saturating keeps the product from overflowing
+        for (; i < bytes.length && bytes[i] >= '0' && bytes[i] <= '9'; i++) {
+            value = Math.min(value * 10 + (bytes[i] - '0'), Integer.MAX_VALUE);
+        }
+        position[0] = i;
+        return i == start ? -1 : value;
+    }
+
+    /**
+     * Dimensions of a WebP file from its first chunk: lossy (VP8), lossless (VP8L) or extended
+     * (VP8X, the canvas size). -1 when it is not a WebP header.
+     */
+    private static long webpPixelCount(byte[] bytes) {
+        if (bytes.length < 30 || !ascii(bytes, 0, "RIFF") || !ascii(bytes, 8, "WEBP")) {
+            return -1;
+        }
+        if (ascii(bytes, 12, "VP8 ")) {
+            return (long) (littleEndian(bytes, 26, 2) & 0x3FFF) * (littleEndian(bytes, 28, 2) & 0x3FFF);
+        }
+        if (ascii(bytes, 12, "VP8L")) {
+            int bits = littleEndian(bytes, 21, 4);
+            return (long) ((bits & 0x3FFF) + 1) * (((bits >>> 14) & 0x3FFF) + 1);
+        }
+        if (ascii(bytes, 12, "VP8X")) {
+            return (long) (littleEndian(bytes, 24, 3) + 1) * (littleEndian(bytes, 27, 3) + 1);
+        }
+        return -1;
+    }
+
+    private static boolean ascii(byte[] bytes, int offset, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (bytes[offset + i] != text.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int littleEndian(byte[] bytes, int offset, int length) {
+        int value = 0;
+        for (int i = length - 1; i >= 0; i--) {
+            value = (value << 8) | (bytes[offset + i] & 0xFF);
+        }
+        return value;
+    }
+
+    /**
+     * Reads width and height from the image header through ImageIO without decoding pixels.
+     * Returns 0 when no ImageIO reader recognises the header or the reader fails on it.
+     */
+    private static long probePixelCount(byte[] bytes) {
+        try (ImageInputStream input = ImageIO.createImageInputStream(new ByteArrayInputStream(bytes))) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                return 0;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                return (long) reader.getWidth(0) * reader.getHeight(0);
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException | RuntimeException e) {
+            // Plugins throw unchecked exceptions on crafted headers; as unreadable as a truncated one
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.arzit.barcodescanner.services;
+
+/**
+ * Thrown when an upload is refused before decoding, e.g. because it exceeds the configured
+ * byte or pixel limits.
+ */
+public class ImageRejectedException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public ImageRejectedException(String message) {
+        super(message);
+    }
+}
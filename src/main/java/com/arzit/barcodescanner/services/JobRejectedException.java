@@ -0,0 +1,20 @@
+package com.arzit.barcodescanner.services;
+
+/**
+ * Thrown when a decode job or batch is not admitted because the service is saturated.
+ */
+public class JobRejectedException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long retryAfterSeconds;
+
+    public JobRejectedException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
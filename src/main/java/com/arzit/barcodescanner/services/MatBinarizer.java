@@ -0,0 +1,268 @@
+package com.arzit.barcodescanner.services;
+
+import com.google.zxing.Binarizer;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.common.BitArray;
+import com.google.zxing.common.BitMatrix;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Local-mean thresholding for ZXing that works on the rows of a Mat instead of a copied
+ * luminance array.
+ * <p>
+ * A pixel is black when it is at least {@link #OFFSET} gray levels darker than the mean of the
+ * window around it. The window grows with the image so thick bars of large symbols do not hollow
+ * out. {@link Method#ADAPTIVE} thresholds in OpenCV against block means interpolated to every
+ * pixel, which is cheaper than the exact mean; {@link Method#INTEGRAL} keeps running column
+ * sums over a ring of window rows in Java, on buffers reused per thread, and allocates nothing but
+ * the result. Backed by a {@link MatLuminanceSource} neither copies the whole image into the Java
+ * heap; other sources are read row by row. Unlike {@code HybridBinarizer} it has no special case
+ * for flat blocks, so a region of uniform noise binarizes as noise.
+ */
+public final class MatBinarizer extends Binarizer {
+
+    public enum Method {
+        ADAPTIVE, INTEGRAL
+    }
+
+    // Gray levels below the local mean before a pixel counts as black
+    static final int OFFSET = 10;
+    private static final int MIN_WINDOW = 41;
+    private static final int WINDOW_FRACTION = 8;
+    // Side of the blocks whose means the adaptive method interpolates
+    private static final int BLOCK = 8;
+    // Row buffers kept per thread up to this many bytes; wider images allocate their own
+    private static final int REUSABLE_BUFFER_LIMIT = 4 * 1024 * 1024;
+
+    // Mask value of a black pixel, as OpenCV writes it; only its top bit is read
+    private static final byte BLACK = (byte) 0xFF;
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private static final ThreadLocal<Buffers> BUFFERS = ThreadLocal.withInitial(Buffers::new);
+
+    private final Method method;
+    private BitMatrix matrix;
+
+    public MatBinarizer(LuminanceSource source, Method method) {
+        super(source);
+        this.method = method;
+    }
+
+    @Override
+    public BitArray getBlackRow(int y, BitArray row) throws NotFoundException {
+        return getBlackMatrix().getRow(y, row);
+    }
+
+    @Override
+    public BitMatrix getBlackMatrix() throws NotFoundException {
+        if (matrix == null) {
+            LuminanceSource source = getLuminanceSource();
+            matrix = method == Method.ADAPTIVE ? adaptive(source) : integral(source);
+        }
+        return matrix;
+    }
+
+    @Override
+    public Binarizer createBinarizer(LuminanceSource source) {
+        return new MatBinarizer(source, method);
+    }
+
+    /**
+     * Odd window side for an image, at least {@link #MIN_WINDOW} and about an eighth of its
+     * shorter side.
+     */
+    static int window(int width, int height) {
+        return Math.max(MIN_WINDOW, Math.min(width, height) / WINDOW_FRACTION) | 1;
+    }
+
+    private static BitMatrix adaptive(LuminanceSource source) {
+        int width = source.getWidth();
+        int height = source.getHeight();
+        Mat gray = source instanceof MatLuminanceSource mat ? mat.gray() : toMat(source);
+        Mat means = new Mat();
+        Mat threshold = new Mat();
+        Mat black = new Mat();
+        try {
+            // Mean of each block, averaged over the window's worth of blocks, then interpolated
+            // back to every pixel: the same statistics as a full-resolution box filter, at a
+            // sixty-fourth of the work
+            Size blocks = new Size(Math.ceil(width / (double) BLOCK), Math.ceil(height / (double) BLOCK));
+            Imgproc.resize(gray, means, blocks, 0, 0, Imgproc.INTER_AREA);
+            int blockWindow = Math.max(3, window(width, height) / BLOCK) | 1;
+            Imgproc.blur(means, means, new Size(blockWindow, blockWindow), new Point(-1, -1), Core.BORDER_REPLICATE);
+            Imgproc.resize(means, threshold, gray.size(), 0, 0, Imgproc.INTER_LINEAR);
+            Core.subtract(threshold, new Scalar(OFFSET), threshold);
+            // 255 where the pixel is black
+            Core.compare(gray, threshold, black, Core.CMP_LE);
+
+            byte[] row = buffers(width, 0).line;
+            BitMatrix bits = new BitMatrix(width, height);
+            BitArray packed = new BitArray(width);
+            for (int y = 0; y < height; y++) {
+                black.get(y, 0, row);
+                pack(row, width, packed);
+                bits.setRow(y, packed);
+            }
+            return bits;
+        } finally {
+            means.release();
+            threshold.release();
+            black.release();
+            if (!(source instanceof MatLuminanceSource)) {
+                gray.release();
+            }
+        }
+    }
+
+    private static BitMatrix integral(LuminanceSource source) {
+        int width = source.getWidth();
+        int height = source.getHeight();
+        int window = window(width, height);
+        int radius = window / 2;
+        Mat gray = source instanceof MatLuminanceSource mat ? mat.gray() : null;
+
+        Buffers buffers = buffers(width, window);
+        byte[] rows = buffers.rows;
+        int[] columns = buffers.columns;
+        long[] prefix = buffers.prefix;
+        Arrays.fill(columns, 0, width, 0);
+
+        byte[] mask = buffers.mask;
+        BitMatrix bits = new BitMatrix(width, height);
+        BitArray packed = new BitArray(width);
+        // Column sums cover rows [top, bottom]; row r lives in ring slot r % window
+        int top = 0;
+        int bottom = -1;
+        for (int y = 0; y < height; y++) {
+            // Drop the row leaving the window before the entering row reuses its slot
+            while (top < y - radius) {
+                int slot = (top % window) * width;
+                for (int x = 0; x < width; x++) {
+                    columns[x] -= rows[slot + x] & 0xFF;
+                }
+                top++;
+            }
+            while (bottom < Math.min(height - 1, y + radius)) {
+                bottom++;
+                int slot = (bottom % window) * width;
+                readRow(source, gray, bottom, buffers.line, rows, slot);
+                for (int x = 0; x < width; x++) {
+                    columns[x] += rows[slot + x] & 0xFF;
+                }
+            }
+
+            prefix[0] = 0;
+            for (int x = 0; x < width; x++) {
+                prefix[x + 1] = prefix[x] + columns[x];
+            }
+            int rowCount = bottom - top + 1;
+            int slot = (y % window) * width;
+            // Away from the left and right edges the window is whole, so its pixel count is fixed
+            int from = Math.min(radius, width);
+            int to = Math.max(from, width - radius);
+            long count = (long) rowCount * window;
+            for (int x = from; x < to; x++) {
+                long sum = prefix[x + radius + 1] - prefix[x - radius];
+                // pixel <= mean - OFFSET, without dividing
+                mask[x] = ((rows[slot + x] & 0xFF) + OFFSET) * count <= sum ? BLACK : 0;
+            }
+            // The clipped windows of the columns left of from and from to onwards
+            for (int x = 0; x < width; x = x + 1 == from ? to : x + 1) {
+                int left = Math.max(0, x - radius);
+                int right = Math.min(width - 1, x + radius);
+                long clipped = (long) rowCount * (right - left + 1);
+                long sum = prefix[right + 1] - prefix[left];
+                mask[x] = ((rows[slot + x] & 0xFF) + OFFSET) * clipped <= sum ? BLACK : 0;
+            }
+            pack(mask, width, packed);
+            bits.setRow(y, packed);
+        }
+        return bits;
+    }
+
+    /**
+     * Packs a row of 0 and {@link #BLACK} bytes into {@code packed}, eight pixels per step: the
+     * multiplication gathers the top bit of every byte of a little-endian long into its top byte.
+     */
+    private static void pack(byte[] mask, int width, BitArray packed) {
+        int x = 0;
+        for (; x + 32 <= width; x += 32) {
+            int word = 0;
+            for (int octet = 0; octet < 4; octet++) {
+                long pixels = (long) LONGS.get(mask, x + octet * 8);
+                word |= (int) (((pixels & 0x8080808080808080L) * 0x0002040810204081L) >>> 56) << (octet * 8);
+            }
+            packed.setBulk(x, word);
+        }
+        if (x < width) {
+            int word = 0;
+            for (int i = x; i < width; i++) {
+                word |= (mask[i] >>> 31) << (i - x);
+            }
+            packed.setBulk(x, word);
+        }
+    }
+
+    /**
+     * Copies row {@code y} into {@code rows} at {@code offset}, straight from the Mat when there
+     * is one. {@code line} is exactly one row long, as Mat.get fills the whole array.
+     */
+    private static void readRow(LuminanceSource source, Mat gray, int y, byte[] line, byte[] rows, int offset) {
+        byte[] row = line;
+        if (gray != null) {
+            gray.get(y, 0, line);
+        } else {
+            row = source.getRow(y, line);
+        }
+        System.arraycopy(row, 0, rows, offset, line.length);
+    }
+
+    private static Mat toMat(LuminanceSource source) {
+        Mat mat = new Mat(source.getHeight(), source.getWidth(), CvType.CV_8UC1);
+        mat.put(0, 0, source.getMatrix());
+        return mat;
+    }
+
+    private static Buffers buffers(int width, int rowCount) {
+        long bytes = (long) width * (rowCount + 2) + 12L * (width + 1);
+        if (bytes > REUSABLE_BUFFER_LIMIT) {
+            return new Buffers().ensure(width, rowCount);
+        }
+        return BUFFERS.get().ensure(width, rowCount);
+    }
+
+    private static final class Buffers {
+        byte[] line = new byte[0];
+        byte[] mask = new byte[0];
+        byte[] rows = new byte[0];
+        int[] columns = new int[0];
+        long[] prefix = new long[1];
+
+        Buffers ensure(int width, int rowCount) {
+            if (line.length != width) {
+                line = new byte[width];
+                mask = new byte[width];
+            }
+            if (rows.length < width * rowCount) {
+                rows = new byte[width * rowCount];
+            }
+            if (columns.length < width) {
+                columns = new int[width];
+                prefix = new long[width + 1];
+            }
+            return this;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.arzit.barcodescanner.services;
+
+import com.google.zxing.LuminanceSource;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * ZXing {@link LuminanceSource} backed directly by an OpenCV {@link Mat}.
+ * <p>
+ * Grayscale (CV_8UC1) Mats, including ROI submats, are used as-is; colour Mats are converted
+ * to grayscale once. Rows are read straight from native memory, the whole matrix is copied out
+ * lazily, a single time, and crops are served as ROI views so no re-encoding happens on the
+ * decode path.
+ * <p>
+ * Mats the source creates (the grayscale conversion, crops and rotations, including those of the
+ * sources derived from it) are released when it is closed, never left to finalization.
+ */
+public final class MatLuminanceSource extends LuminanceSource implements AutoCloseable {
+
+    private final Mat gray;
+    // Mats created by this source and the sources derived from it
+    private final List<Mat> owned;
+    private byte[] matrix;
+
+    public MatLuminanceSource(Mat mat) {
+        this(mat, new ArrayList<>());
+    }
+
+    private MatLuminanceSource(Mat mat, List<Mat> owned) {
+        super(mat.cols(), mat.rows());
+        this.owned = owned;
+        if (mat.type() == CvType.CV_8UC1) {
+            this.gray = mat;
+        } else {
+            this.gray = own(new Mat());
+            int code = mat.channels() == 4 ? Imgproc.COLOR_BGRA2GRAY : Imgproc.COLOR_BGR2GRAY;
+            Imgproc.cvtColor(mat, gray, code);
+        }
+    }
+
+    /**
+     * The grayscale pixels, for binarizers that read the Mat directly.
+     */
+    Mat gray() {
+        return gray;
+    }
+
+    @Override
+    public byte[] getRow(int y, byte[] row) {
+        if (y < 0 || y >= getHeight()) {
+            throw new IllegalArgumentException("Requested row is outside the image: " + y);
+        }
+        int width = getWidth();
+        if (row == null || row.length < width) {
+            row = new byte[width];
+        }
+        if (matrix != null) {
+            System.arraycopy(matrix, y * width, row, 0, width);
+        } else {
+            // Only this row is copied; Mat.get follows the stride of ROI submats
+            gray.get(y, 0, row);
+        }
+        return row;
+    }
+
+    @Override
+    public byte[] getMatrix() {
+        if (matrix == null) {
+            byte[] data = new byte[getWidth() * getHeight()];
+            // Mat.get walks the row stride itself, so ROI submats need no special casing
+            gray.get(0, 0, data);
+            matrix = data;
+        }
+        return matrix;
+    }
+
+    @Override
+    public boolean isCropSupported() {
+        return true;
+    }
+
+    @Override
+    public LuminanceSource crop(int left, int top, int width, int height) {
+        return new MatLuminanceSource(own(gray.submat(new Rect(left, top, width, height))), owned);
+    }
+
+    @Override
+    public boolean isRotateSupported() {
+        return true;
+    }
+
+    @Override
+    public LuminanceSource rotateCounterClockwise() {
+        Mat rotated = own(new Mat());
+        Core.rotate(gray, rotated, Core.ROTATE_90_COUNTERCLOCKWISE);
+        return new MatLuminanceSource(rotated, owned);
+    }
+
+    /**
+     * Releases the Mats created by this source and the sources derived from it; the Mat it was
+     * built from stays with the caller.
+     */
+    @Override
+    public void close() {
+        owned.forEach(Mat::release);
+        owned.clear();
+    }
+
+    private Mat own(Mat mat) {
+        owned.add(mat);
+        return mat;
+    }
+}
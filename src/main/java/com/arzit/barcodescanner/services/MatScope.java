@@ -0,0 +1,97 @@
+package com.arzit.barcodescanner.services;
+
+import org.opencv.core.Mat;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Arena for native Mats created while handling one request.
+ * <p>
+ * Mats registered with {@link #track(Mat)} are released together when the scope closes, instead of
+ * waiting for the Java GC, which cannot see native memory pressure. Open scopes are registered
+ * globally so the native bytes they hold can be reported.
+ */
+public final class MatScope implements AutoCloseable {
+
+    private static final Set<MatScope> OPEN = ConcurrentHashMap.newKeySet();
+
+    private final List<Mat> mats = new ArrayList<>();
+    private boolean closed;
+
+    private MatScope() {
+    }
+
+    public static MatScope open() {
+        MatScope scope = new MatScope();
+        OPEN.add(scope);
+        return scope;
+    }
+
+    /**
+     * Registers a Mat for release when the scope closes. Safe to call from worker threads.
+     */
+    public synchronized <T extends Mat> T track(T mat) {
+        if (closed) {
+            throw new IllegalStateException("Mat scope is already closed");
+        }
+        mats.add(mat);
+        return mat;
+    }
+
+    public <T extends Mat> List<T> trackAll(Collection<T> collection) {
+        for (T mat : collection) {
+            track(mat);
+        }
+        return new ArrayList<>(collection);
+    }
+
+    public Mat newMat() {
+        return track(new Mat());
+    }
+
+    /**
+     * Native bytes owned by the tracked Mats; submatrix views do not own their data.
+     */
+    public synchronized long bytes() {
+        long bytes = 0;
+        for (Mat mat : mats) {
+            bytes += bytesOf(mat);
+        }
+        return bytes;
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            for (Mat mat : mats) {
+                mat.release();
+            }
+            mats.clear();
+        }
+        OPEN.remove(this);
+    }
+
+    /**
+     * Native bytes currently held by all open scopes.
+     */
+    public static long liveBytes() {
+        long bytes = 0;
+        for (MatScope scope : OPEN) {
+            bytes += scope.bytes();
+        }
+        return bytes;
+    }
+
+    public static int openScopes() {
+        return OPEN.size();
+    }
+
+    static long bytesOf(Mat mat) {
+        return mat.empty() || mat.isSubmatrix() ? 0 : mat.total() * mat.elemSize();
+    }
+}
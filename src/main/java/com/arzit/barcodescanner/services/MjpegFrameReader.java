@@ -0,0 +1,144 @@
+package com.arzit.barcodescanner.services;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Splits an MJPEG stream into JPEG frames.
+ * <p>
+ * Frames are found by walking the JPEG marker structure rather than by the multipart framing, so
+ * both {@code multipart/x-mixed-replace} bodies and plain concatenated JPEGs work, and anything
+ * between frames (boundaries, part headers) is skipped. Segment lengths are honoured, so an
+ * embedded EXIF thumbnail does not end a frame early.
+ */
+public final class MjpegFrameReader {
+
+    private static final int MARKER = 0xFF;
+    private static final int SOI = 0xD8;
+    private static final int EOI = 0xD9;
+    private static final int SOS = 0xDA;
+    private static final int TEM = 0x01;
+    private static final int RST0 = 0xD0;
+    private static final int RST7 = 0xD7;
+
+    private final InputStream in;
+    private final int maxFrameBytes;
+    private byte[] frame = new byte[64 * 1024];
+    private int size;
+
+    public MjpegFrameReader(InputStream in, int maxFrameBytes) {
+        this.in = new BufferedInputStream(in, 64 * 1024);
+        this.maxFrameBytes = maxFrameBytes;
+    }
+
+    /**
+     * The next complete JPEG, or null at the end of the stream. A frame cut off by the end of the
+     * stream is dropped.
+     *
+     * @throws IOException when a frame is corrupt or exceeds the size limit
+     */
+    public byte[] next() throws IOException {
+        try {
+            if (!skipToStartOfImage()) {
+                return null;
+            }
+            size = 0;
+            write(MARKER);
+            write(SOI);
+            int marker = nextMarker();
+            while (marker != EOI) {
+                if (marker == TEM || (marker >= RST0 && marker <= RST7)) {
+                    // Standalone markers carry no length
+                    marker = nextMarker();
+                    continue;
+                }
+                int high = read();
+                int low = read();
+                write(high);
+                write(low);
+                int length = (high << 8 | low) - 2;
+                if (length < 0) {
+                    throw new IOException("Corrupt JPEG segment length");
+                }
+                for (int i = 0; i < length; i++) {
+                    write(read());
+                }
+                marker = marker == SOS ? entropyCodedData() : nextMarker();
+            }
+            return Arrays.copyOf(frame, size);
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    private boolean skipToStartOfImage() throws IOException {
+        int previous = -1;
+        int b;
+        while ((b = in.read()) >= 0) {
+            if (previous == MARKER && b == SOI) {
+                return true;
+            }
+            previous = b;
+        }
+        return false;
+    }
+
+    private int nextMarker() throws IOException {
+        int b = read();
+        if (b != MARKER) {
+            throw new IOException("Corrupt JPEG: expected a marker");
+        }
+        int code;
+        do {
+            // Any number of fill bytes may precede the marker code
+            code = read();
+        } while (code == MARKER);
+        write(MARKER);
+        write(code);
+        return code;
+    }
+
+    /**
+     * Copies scan data up to the next marker that is not a stuffed byte or a restart marker, and
+     * returns that marker.
+     */
+    private int entropyCodedData() throws IOException {
+        while (true) {
+            int b = read();
+            if (b != MARKER) {
+                write(b);
+                continue;
+            }
+            int code;
+            do {
+                code = read();
+            } while (code == MARKER);
+            write(MARKER);
+            write(code);
+            if (code != 0 && (code < RST0 || code > RST7)) {
+                return code;
+            }
+        }
+    }
+
+    private int read() throws IOException {
+        int b = in.read();
+        if (b < 0) {
+            throw new EOFException();
+        }
+        return b;
+    }
+
+    private void write(int b) throws IOException {
+        if (size == frame.length) {
+            if (size >= maxFrameBytes) {
+                throw new IOException("Frame exceeds the limit of " + maxFrameBytes + " bytes");
+            }
+            frame = Arrays.copyOf(frame, (int) Math.min(maxFrameBytes, (long) size * 2));
+        }
+        frame[size++] = (byte) b;
+    }
+}
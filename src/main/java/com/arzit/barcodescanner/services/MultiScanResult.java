@@ -0,0 +1,21 @@
+package com.arzit.barcodescanner.services;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.List;
+
+/**
+ * Outcome of a multi-symbol scan: every distinct symbol in reading order, or the reason none
+ * was decoded.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record MultiScanResult(List<DecodedSymbol> symbols, String error) {
+
+    public static MultiScanResult decoded(List<DecodedSymbol> symbols) {
+        return new MultiScanResult(symbols, null);
+    }
+
+    public static MultiScanResult failed(String error) {
+        return new MultiScanResult(List.of(), error);
+    }
+}
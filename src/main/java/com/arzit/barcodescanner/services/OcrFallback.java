@@ -0,0 +1,337 @@
+package com.arzit.barcodescanner.services;
+
+import com.arzit.barcodescanner.metrics.ScanMetrics;
+
+import com.sun.jna.Pointer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import net.sourceforge.tess4j.ITessAPI;
+import net.sourceforge.tess4j.TessAPI;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Reads the human-readable zone, the text printed above and below a symbol, when the symbol
+ * itself does not decode.
+ * <p>
+ * Tesseract loads its language model when an instance is initialised, which takes hundreds of
+ * milliseconds, so a bounded pool of initialised engines is created at startup and reused. A read
+ * starts only if the scan's deadline leaves at least the expected cost of a read (a moving
+ * average, seeded by {@code expected-ms}) and an engine frees up within {@code max-wait-ms};
+ * otherwise the fallback is skipped rather than queueing scans behind OCR. Texts are cached by a
+ * digest of the zone's pixels. Disabled by default: it needs the native Tesseract library and
+ * traineddata files.
+ */
+@Service
+public class OcrFallback {
+
+    // Weight of the newest read in the moving average of the cost
+    private static final double SMOOTHING = 0.1;
+
+    @Autowired
+    ScanMetrics scanMetrics;
+
+    @Value("${barcode.ocr.enabled:false}")
+    boolean enabled;
+
+    // Directory holding <language>.traineddata; empty uses TESSDATA_PREFIX
+    @Value("${barcode.ocr.datapath:}")
+    String datapath = "";
+
+    @Value("${barcode.ocr.language:eng}")
+    String language = "eng";
+
+    // Initialised engines, and so the most reads running at once
+    @Value("${barcode.ocr.pool-size:2}")
+    int poolSize = 2;
+
+    // Height of the zones above and below the symbol, relative to the symbol's height
+    @Value("${barcode.ocr.zone-ratio:0.5}")
+    double zoneRatio = 0.5;
+
+    // Assumed cost of a read until one has been measured
+    @Value("${barcode.ocr.expected-ms:300}")
+    long expectedMs = 300;
+
+    // Longest wait for a free engine before the fallback is skipped
+    @Value("${barcode.ocr.max-wait-ms:50}")
+    long maxWaitMs = 50;
+
+    @Value("${barcode.ocr.cache.max-entries:1024}")
+    int cacheMaxEntries = 1024;
+
+    // Creates one initialised engine; replaced in tests
+    Supplier<OcrEngine> engines = () -> new TesseractEngine(datapath, language);
+
+    private BlockingQueue<OcrEngine> pool;
+    private final LinkedHashMap<String, String> cache = new LinkedHashMap<>(64, 0.75f, true);
+    private double meanCostMs;
+    private long reads;
+    private long cacheHits;
+    private long skippedBudget;
+    private long skippedBusy;
+
+    /**
+     * Text recognition over an 8-bit grayscale image; one caller at a time.
+     */
+    interface OcrEngine extends AutoCloseable {
+
+        String read(Mat gray);
+
+        @Override
+        void close();
+    }
+
+    public record OcrStats(boolean enabled, long reads, long cacheHits, long skippedBudget, long skippedBusy,
+                           double meanCostMs) {
+    }
+
+    @PostConstruct
+    void start() {
+        if (!enabled) {
+            return;
+        }
+        pool = new ArrayBlockingQueue<>(poolSize);
+        try {
+            for (int i = 0; i < poolSize; i++) {
+                pool.add(engines.get());
+            }
+        } catch (RuntimeException | LinkageError e) {
+            stop();
+            throw new IllegalStateException("Cannot initialise Tesseract for barcode.ocr: " + e.getMessage(), e);
+        }
+    }
+
+    @PreDestroy
+    void stop() {
+        if (pool == null) {
+            return;
+        }
+        OcrEngine engine;
+        while ((engine = pool.poll()) != null) {
+            engine.close();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Reads the zones around {@code symbol}, the box of a symbol located in {@code image} without
+     * its expansion. Returns null when disabled, when there is no symbol or nothing was read, or
+     * when the deadline or the pool does not allow a read.
+     */
+    public String read(Mat image, Rect symbol, Deadline deadline) {
+        if (!enabled || symbol == null || image.empty() || deadline.expired()) {
+            return null;
+        }
+        Mat gray = BarcodeLocator.toGray(image);
+        try {
+            List<String> lines = new ArrayList<>(2);
+            for (Rect zone : zones(symbol, gray.cols(), gray.rows(), zoneRatio)) {
+                Mat region = gray.submat(zone);
+                try {
+                    String text = readCached(region, deadline);
+                    if (text == null) {
+                        // Out of time or engines; the next zone would not fare better
+                        break;
+                    }
+                    if (!text.isBlank()) {
+                        lines.add(text.strip());
+                    }
+                } finally {
+                    region.release();
+                }
+            }
+            return lines.isEmpty() ? null : String.join("\n", lines);
+        } finally {
+            if (gray != image) {
+                gray.release();
+            }
+        }
+    }
+
+    /**
+     * The bands directly above and below {@code symbol}, as wide as the symbol and
+     * {@code ratio} times its height, clipped to the image; empty bands are left out.
+     */
+    static List<Rect> zones(Rect symbol, int width, int height, double ratio) {
+        int zoneHeight = Math.max(1, (int) Math.round(symbol.height * ratio));
+        int left = Math.max(0, symbol.x);
+        int right = Math.min(width, symbol.x + symbol.width);
+        List<Rect> zones = new ArrayList<>(2);
+        if (right <= left) {
+            return zones;
+        }
+        int aboveTop = Math.max(0, symbol.y - zoneHeight);
+        if (symbol.y > aboveTop) {
+            zones.add(new Rect(left, aboveTop, right - left, symbol.y - aboveTop));
+        }
+        int belowTop = symbol.y + symbol.height;
+        int belowBottom = Math.min(height, belowTop + zoneHeight);
+        if (belowBottom > belowTop) {
+            zones.add(new Rect(left, belowTop, right - left, belowBottom - belowTop));
+        }
+        return zones;
+    }
+
+    /**
+     * The zone's text, possibly blank, or null when the read was skipped.
+     */
+    private String readCached(Mat region, Deadline deadline) {
+        String key = regionKey(region);
+        synchronized (this) {
+            String cached = cache.get(key);
+            if (cached != null) {
+                cacheHits++;
+                return cached;
+            }
+        }
+        // Checked per zone, as the first read may have used up the time the second needs
+        if (!affordable(deadline)) {
+            return null;
+        }
+        OcrEngine engine = acquire(deadline);
+        if (engine == null) {
+            return null;
+        }
+        String text;
+        long start = System.nanoTime();
+        try {
+            text = scanMetrics.stage(ScanMetrics.OCR, null, () -> engine.read(region), String::isBlank);
+        } finally {
+            pool.add(engine);
+        }
+        record((System.nanoTime() - start) / 1e6, key, text);
+        return text;
+    }
+
+    private boolean affordable(Deadline deadline) {
+        synchronized (this) {
+            double expected = reads == 0 ? expectedMs : meanCostMs;
+            if (deadline.remainingNanos() / 1e6 >= expected) {
+                return true;
+            }
+            skippedBudget++;
+            return false;
+        }
+    }
+
+    private OcrEngine acquire(Deadline deadline) {
+        long waitNanos = Math.min(TimeUnit.MILLISECONDS.toNanos(maxWaitMs), Math.max(0, deadline.remainingNanos()));
+        try {
+            OcrEngine engine = pool.poll(waitNanos, TimeUnit.NANOSECONDS);
+            if (engine == null) {
+                synchronized (this) {
+                    skippedBusy++;
+                }
+            }
+            return engine;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    private synchronized void record(double costMs, String key, String text) {
+        meanCostMs = reads == 0 ? costMs : meanCostMs + SMOOTHING * (costMs - meanCostMs);
+        reads++;
+        // Zones without text are cached too, so they are not read again
+        cache.put(key, text);
+        if (cache.size() > cacheMaxEntries) {
+            // Access order puts the least recently used entry first
+            cache.remove(cache.keySet().iterator().next());
+        }
+    }
+
+    public synchronized OcrStats stats() {
+        return new OcrStats(enabled, reads, cacheHits, skippedBudget, skippedBusy, reads == 0 ? expectedMs : meanCostMs);
+    }
+
+    /**
+     * Digest of a grayscale region's size and pixels, read row by row as a crop is not continuous.
+     */
+    static String regionKey(Mat region) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+        digest.update(ByteBuffer.allocate(8).putInt(region.cols()).putInt(region.rows()).array());
+        byte[] row = new byte[region.cols()];
+        for (int y = 0; y < region.rows(); y++) {
+            region.get(y, 0, row);
+            digest.update(row);
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * A Tesseract API handle initialised once with the language model and reused for every read,
+     * unlike {@code Tesseract}, which initialises and ends the API around each call.
+     */
+    private static final class TesseractEngine implements OcrEngine {
+
+        private final TessAPI api = TessAPI.INSTANCE;
+        private final ITessAPI.TessBaseAPI handle;
+
+        TesseractEngine(String datapath, String language) {
+            handle = api.TessBaseAPICreate();
+            if (api.TessBaseAPIInit3(handle, datapath.isBlank() ? null : datapath, language) != 0) {
+                api.TessBaseAPIDelete(handle);
+                throw new IllegalStateException("Tesseract cannot load language '" + language + "' from '" + datapath + "'");
+            }
+            // Zones are a few lines of text, not a page with columns
+            api.TessBaseAPISetPageSegMode(handle, ITessAPI.TessPageSegMode.PSM_SINGLE_BLOCK);
+            // Mats carry no resolution; without one Tesseract warns on every read
+            api.TessBaseAPISetVariable(handle, "user_defined_dpi", "300");
+        }
+
+        @Override
+        public String read(Mat gray) {
+            int width = gray.cols();
+            int height = gray.rows();
+            ByteBuffer pixels = ByteBuffer.allocateDirect(width * height);
+            byte[] row = new byte[width];
+            for (int y = 0; y < height; y++) {
+                gray.get(y, 0, row);
+                pixels.put(row);
+            }
+            pixels.flip();
+            api.TessBaseAPISetImage(handle, pixels, width, height, 1, width);
+            Pointer text = api.TessBaseAPIGetUTF8Text(handle);
+            try {
+                return text == null ? "" : text.getString(0, StandardCharsets.UTF_8.name());
+            } finally {
+                if (text != null) {
+                    api.TessDeleteText(text);
+                }
+                api.TessBaseAPIClear(handle);
+            }
+        }
+
+        @Override
+        public void close() {
+            api.TessBaseAPIEnd(handle);
+            api.TessBaseAPIDelete(handle);
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.arzit.barcodescanner.services;
+
+import org.opencv.core.*;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Estimates how far a PDF417 region is rotated and straightens it.
+ * <p>
+ * The bars of a symbol produce strong gradients perpendicular to them, so the peak of a
+ * magnitude-weighted histogram of gradient angles gives the skew modulo 180 degrees; ZXing reads
+ * upside-down symbols, so that is enough. Right-angle rotations are done losslessly with a
+ * transpose/flip, anything else with one interpolated warp onto a canvas large enough to keep the
+ * corners.
+ */
+public final class Orientation {
+
+    // Regions within this many degrees of upright are left alone; ZXing tolerates a few degrees
+    public static final double UPRIGHT_TOLERANCE = 2.0;
+    // Rotations within this many degrees of a right angle are done losslessly
+    private static final double RIGHT_ANGLE_TOLERANCE = 2.0;
+    // The estimate runs on a copy downscaled to this longer side; skew does not depend on scale
+    private static final int ESTIMATE_MAX_DIMENSION = 512;
+
+    private Orientation() {
+    }
+
+    /**
+     * Counter-clockwise rotation of the bars from vertical in degrees, in (-90, 90], in the sense
+     * of {@link Imgproc#getRotationMatrix2D}. Returns 0 when the region has no structure.
+     */
+    public static double estimateSkew(Mat gray) {
+        Mat small = gray;
+        double longSide = Math.max(gray.cols(), gray.rows());
+        if (longSide > ESTIMATE_MAX_DIMENSION) {
+            small = new Mat();
+            double factor = ESTIMATE_MAX_DIMENSION / longSide;
+            Imgproc.resize(gray, small, new Size(), factor, factor, Imgproc.INTER_AREA);
+        }
+        Mat blurred = new Mat();
+        Mat dx = new Mat();
+        Mat dy = new Mat();
+        Mat magnitude = new Mat();
+        Mat angle = new Mat();
+        try {
+            // Smoothing plus the Scharr kernel keep the gradient angle from snapping to the axes
+            Imgproc.GaussianBlur(small, blurred, new Size(5, 5), 0);
+            Imgproc.Scharr(blurred, dx, CvType.CV_32F, 1, 0);
+            Imgproc.Scharr(blurred, dy, CvType.CV_32F, 0, 1);
+            Core.cartToPolar(dx, dy, magnitude, angle, true);
+            float[] magnitudes = new float[(int) magnitude.total()];
+            float[] angles = new float[(int) angle.total()];
+            magnitude.get(0, 0, magnitudes);
+            angle.get(0, 0, angles);
+            return toSkewRange(-peakAngle(magnitudes, angles));
+        } finally {
+            if (small != gray) {
+                small.release();
+            }
+            blurred.release();
+            dx.release();
+            dy.release();
+            magnitude.release();
+            angle.release();
+        }
+    }
+
+    /**
+     * Rotates {@code src} so that bars skewed by {@code skew} degrees become vertical.
+     */
+    public static void straighten(Mat src, double skew, Mat dst) {
+        rotate(src, -skew, dst);
+    }
+
+    /**
+     * Rotates counter-clockwise by {@code degrees}. Right angles are exact and lossless; other
+     * angles enlarge the canvas so nothing is cut off, filling the corners with white.
+     */
+    public static void rotate(Mat src, double degrees, Mat dst) {
+        double normalized = ((degrees % 360) + 360) % 360;
+        int quarterTurns = (int) Math.round(normalized / 90) % 4;
+        if (Math.abs(normalized - Math.round(normalized / 90) * 90) <= RIGHT_ANGLE_TOLERANCE) {
+            switch (quarterTurns) {
+                case 0 -> src.copyTo(dst);
+                case 1 -> Core.rotate(src, dst, Core.ROTATE_90_COUNTERCLOCKWISE);
+                case 2 -> Core.rotate(src, dst, Core.ROTATE_180);
+                default -> Core.rotate(src, dst, Core.ROTATE_90_CLOCKWISE);
+            }
+            return;
+        }
+
+        double radians = Math.toRadians(degrees);
+        double cos = Math.abs(Math.cos(radians));
+        double sin = Math.abs(Math.sin(radians));
+        Size size = new Size(Math.ceil(src.cols() * cos + src.rows() * sin), Math.ceil(src.cols() * sin + src.rows() * cos));
+        Mat matrix = Imgproc.getRotationMatrix2D(new Point(src.cols() / 2.0, src.rows() / 2.0), degrees, 1);
+        // Shift so the rotated centre lands in the middle of the enlarged canvas
+        matrix.put(0, 2, matrix.get(0, 2)[0] + (size.width - src.cols()) / 2);
+        matrix.put(1, 2, matrix.get(1, 2)[0] + (size.height - src.rows()) / 2);
+        Imgproc.warpAffine(src, dst, matrix, size, Imgproc.INTER_LINEAR, Core.BORDER_CONSTANT, new Scalar(255));
+        matrix.release();
+    }
+
+    /**
+     * Peak of the gradient-angle histogram folded to [0, 180), over the pixels with above-average
+     * gradient magnitude, refined to a fraction of a degree.
+     */
+    private static double peakAngle(float[] magnitudes, float[] angles) {
+        double mean = 0;
+        for (float magnitude : magnitudes) {
+            mean += magnitude;
+        }
+        mean /= Math.max(1, magnitudes.length);
+
+        double[] histogram = new double[180];
+        for (int i = 0; i < magnitudes.length; i++) {
+            if (magnitudes[i] > mean) {
+                histogram[Math.round(angles[i]) % 180] += magnitudes[i];
+            }
+        }
+
+        // Circular [1 2 1] smoothing, then the highest bin
+        double[] smoothed = new double[180];
+        int peak = 0;
+        for (int bin = 0; bin < 180; bin++) {
+            smoothed[bin] = histogram[(bin + 179) % 180] + 2 * histogram[bin] + histogram[(bin + 1) % 180];
+            if (smoothed[bin] > smoothed[peak]) {
+                peak = bin;
+            }
+        }
+        if (smoothed[peak] == 0) {
+            return 0;
+        }
+
+        // Parabola through the peak and its neighbours
+        double left = smoothed[(peak + 179) % 180];
+        double right = smoothed[(peak + 1) % 180];
+        double curvature = left - 2 * smoothed[peak] + right;
+        double offset = curvature == 0 ? 0 : 0.5 * (left - right) / curvature;
+        return peak + offset;
+    }
+
+    private static double toSkewRange(double degrees) {
+        double folded = ((degrees % 180) + 180) % 180;
+        return folded > 90 ? folded - 180 : folded;
+    }
+}
@@ -4,12 +4,29 @@ import org.springframework.stereotype.Service;
 
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
 import java.io.File;
+import java.util.stream.IntStream;
 import javax.imageio.ImageIO;
 
+/**
+ * Pure-Java PDF417 localiser that needs no native library.
+ * <p>
+ * Works on the packed grayscale raster: white pixels are dilated with a separable running-window
+ * filter, and the row and column projections are accumulated in the same pass. Rows are split
+ * into bands processed on the fork/join pool. The inner loops are plain element-wise loops over
+ * primitive arrays so the JIT can vectorise them.
+ */
 @Service
 public class PDF417BarcodeDetector {
 
+    // Dilation radius: a pixel is white when any pixel in its (2r+1)x(2r+1) window is white
+    private static final int DILATION_RADIUS = 2;
+    private static final int WHITE = 255;
+    // Rows per fork/join task, and the image size below which one thread is faster
+    private static final int ROWS_PER_TASK = 64;
+    private static final int PARALLEL_THRESHOLD_PIXELS = 1 << 18;
+
     public static BufferedImage detectPDF417Region(BufferedImage image) {
         // Step 1: Convert to Grayscale
         BufferedImage grayImage = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_BYTE_GRAY);
@@ -17,14 +34,9 @@ public class PDF417BarcodeDetector {
         g.drawImage(image, 0, 0, null);
         g.dispose();
 
-        // Step 2: Apply Thresholding (Adaptive thresholding, if possible)
-//        BufferedImage binaryImage = applyAdaptiveThreshold(grayImage);
-
-        // Step 3: Morphological Transformations to emphasize the barcode region
-        BufferedImage morphImage = applyMorphologicalOperations(image);
-
-        // Step 4: Horizontal and Vertical Projections to find rectangular regions
-        Rectangle barcodeRect = findBarcodeRegionByProjection(morphImage);
+        // Steps 2-4 run on the packed raster
+        byte[] gray = ((DataBufferByte) grayImage.getRaster().getDataBuffer()).getData();
+        Rectangle barcodeRect = detectPDF417Region(gray, grayImage.getWidth(), grayImage.getHeight());
 
         // Step 5: Crop the barcode region from the original image
         if (barcodeRect != null) {
@@ -33,75 +45,28 @@ public class PDF417BarcodeDetector {
         return null; // No barcode detected
     }
 
-    private static BufferedImage applyAdaptiveThreshold(BufferedImage image) {
-        BufferedImage binaryImage = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_BYTE_BINARY);
-        for (int y = 0; y < image.getHeight(); y++) {
-            for (int x = 0; x < image.getWidth(); x++) {
-                int color = new Color(image.getRGB(x, y)).getRed();
-                int threshold = 128; // Adaptive threshold logic can be complex in core Java
-                int binaryColor = color < threshold ? 0 : 255;
-                binaryImage.setRGB(x, y, new Color(binaryColor, binaryColor, binaryColor).getRGB());
-            }
-        }
-        return binaryImage;
-    }
-
-    private static BufferedImage applyMorphologicalOperations(BufferedImage binaryImage) {
-        // Simple dilation followed by erosion to strengthen rectangular structures
-        int dilationRadius = 2; // Example, tune based on the image size and barcode size
-        BufferedImage morphImage = new BufferedImage(binaryImage.getWidth(), binaryImage.getHeight(), binaryImage.getType());
-
-        // Dilation operation: expand white regions
-        for (int y = dilationRadius; y < binaryImage.getHeight() - dilationRadius; y++) {
-            for (int x = dilationRadius; x < binaryImage.getWidth() - dilationRadius; x++) {
-                boolean isWhite = false;
-                for (int dy = -dilationRadius; dy <= dilationRadius; dy++) {
-                    for (int dx = -dilationRadius; dx <= dilationRadius; dx++) {
-                        if (new Color(binaryImage.getRGB(x + dx, y + dy)).getRed() == 255) {
-                            isWhite = true;
-                            break;
-                        }
-                    }
-                    if (isWhite) break;
-                }
-                morphImage.setRGB(x, y, isWhite ? Color.WHITE.getRGB() : Color.BLACK.getRGB());
-            }
+    /**
+     * Locates the barcode in a row-major 8-bit grayscale raster.
+     */
+    public static Rectangle detectPDF417Region(byte[] gray, int width, int height) {
+        int r = DILATION_RADIUS;
+        if (width <= 2 * r || height <= 2 * r) {
+            return null;
         }
 
-        return morphImage;
-    }
-
-    private static Rectangle findBarcodeRegionByProjection(BufferedImage morphImage) {
-        int width = morphImage.getWidth();
-        int height = morphImage.getHeight();
+        // Step 2: Horizontal half of the dilation: white if any white pixel within r columns
+        byte[] horizontal = new byte[width * height];
+        rows(0, height, height * width).forEach(y -> dilateRow(gray, horizontal, y, width));
 
-        // Horizontal and Vertical projection arrays
+        // Step 3: Vertical half of the dilation fused with both projections, per band of rows
         int[] horizontalProjection = new int[height];
-        int[] verticalProjection = new int[width];
-
-        // Calculate horizontal projection (sum of white pixels in each row)
-        for (int y = 0; y < height; y++) {
-            int sum = 0;
-            for (int x = 0; x < width; x++) {
-                if (new Color(morphImage.getRGB(x, y)).getRed() == 255) {
-                    sum++;
-                }
-            }
-            horizontalProjection[y] = sum;
-        }
+        int bands = (height - 2 * r + ROWS_PER_TASK - 1) / ROWS_PER_TASK;
+        int[] verticalProjection = rows(0, bands, height * width)
+                .mapToObj(band -> projectBand(horizontal, horizontalProjection, band, width, height))
+                .reduce(PDF417BarcodeDetector::add)
+                .orElseGet(() -> new int[width]);
 
-        // Calculate vertical projection (sum of white pixels in each column)
-        for (int x = 0; x < width; x++) {
-            int sum = 0;
-            for (int y = 0; y < height; y++) {
-                if (new Color(morphImage.getRGB(x, y)).getRed() == 255) {
-                    sum++;
-                }
-            }
-            verticalProjection[x] = sum;
-        }
-
-        // Identify regions with high projection values (likely barcode region)
+        // Step 4: Identify regions with high projection values (likely barcode region)
         int minY = findPeakRegion(horizontalProjection);
         int maxY = findPeakRegion(horizontalProjection, true);
         int minX = findPeakRegion(verticalProjection);
@@ -113,6 +78,65 @@ public class PDF417BarcodeDetector {
         return null;
     }
 
+    private static IntStream rows(int from, int to, int pixels) {
+        IntStream rows = IntStream.range(from, to);
+        return pixels >= PARALLEL_THRESHOLD_PIXELS ? rows.parallel() : rows;
+    }
+
+    /**
+     * Running count of white pixels over a sliding window of 2r+1 columns.
+     * Columns closer than r to the border stay black, as in the original kernel.
+     */
+    private static void dilateRow(byte[] gray, byte[] out, int y, int width) {
+        int r = DILATION_RADIUS;
+        int row = y * width;
+        int whites = 0;
+        for (int x = 0; x < 2 * r; x++) {
+            whites += (gray[row + x] & 0xFF) == WHITE ? 1 : 0;
+        }
+        for (int x = r; x < width - r; x++) {
+            whites += (gray[row + x + r] & 0xFF) == WHITE ? 1 : 0;
+            out[row + x] = (byte) (whites > 0 ? 1 : 0);
+            whites -= (gray[row + x - r] & 0xFF) == WHITE ? 1 : 0;
+        }
+    }
+
+    /**
+     * Finishes the dilation for one band of rows by OR-ing 2r+1 horizontal results, and adds the
+     * white pixels to the row projection (disjoint per band) and to a band-local column projection.
+     */
+    private static int[] projectBand(byte[] horizontal, int[] rowCounts, int band, int width, int height) {
+        int r = DILATION_RADIUS;
+        int firstRow = r + band * ROWS_PER_TASK;
+        int lastRow = Math.min(firstRow + ROWS_PER_TASK, height - r);
+        int[] columnCounts = new int[width];
+        byte[] white = new byte[width];
+
+        for (int y = firstRow; y < lastRow; y++) {
+            System.arraycopy(horizontal, (y - r) * width, white, 0, width);
+            for (int dy = -r + 1; dy <= r; dy++) {
+                int source = (y + dy) * width;
+                for (int x = 0; x < width; x++) {
+                    white[x] |= horizontal[source + x];
+                }
+            }
+            int sum = 0;
+            for (int x = 0; x < width; x++) {
+                columnCounts[x] += white[x];
+                sum += white[x];
+            }
+            rowCounts[y] = sum;
+        }
+        return columnCounts;
+    }
+
+    private static int[] add(int[] total, int[] part) {
+        for (int i = 0; i < total.length; i++) {
+            total[i] += part[i];
+        }
+        return total;
+    }
+
     private static int findPeakRegion(int[] projection) {
         return findPeakRegion(projection, false);
     }
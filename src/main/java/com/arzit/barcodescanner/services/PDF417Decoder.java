@@ -0,0 +1,464 @@
+package com.arzit.barcodescanner.services;
+
+import com.arzit.barcodescanner.metrics.ScanMetrics;
+
+import com.google.zxing.*;
+import com.google.zxing.common.GlobalHistogramBinarizer;
+import com.google.zxing.common.HybridBinarizer;
+import com.google.zxing.pdf417.PDF417Reader;
+import io.micrometer.observation.Observation;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.opencv.core.*;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Runs ZXing over OpenCV Mats.
+ * <p>
+ * Candidate regions are decoded concurrently on a bounded pool; the first successful decode wins
+ * and all outstanding attempts are cancelled. Multi-symbol scans instead wait for every region
+ * and keep all symbols found.
+ */
+@Service
+public class PDF417Decoder {
+
+    private static final Logger log = LoggerFactory.getLogger(PDF417Decoder.class);
+    // File-name safe timestamp of debug dumps
+    private static final DateTimeFormatter DUMP_TIME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS");
+    private static final AtomicLong DUMP_SEQUENCE = new AtomicLong();
+
+    // Stateless, so one reader serves all threads; restricting the formats skips the other decoders
+    private static final PDF417Reader READER = new PDF417Reader();
+    private static final Map<DecodeHintType, Object> HINTS = Map.of(
+            DecodeHintType.TRY_HARDER, Boolean.TRUE,
+            DecodeHintType.POSSIBLE_FORMATS, List.of(BarcodeFormat.PDF_417));
+
+    @Autowired
+    ScanMetrics scanMetrics = ScanMetrics.noop();
+
+    // Directory for debug dumps of every Mat handed to ZXing; empty disables dumping
+    @Value("${barcode.debug.dump-dir:}")
+    String debugDumpDir = "";
+
+    // Decode worker threads; 0 means one per available core
+    @Value("${barcode.decode.threads:0}")
+    int threads;
+
+    // Binarizer per decode path: hybrid, global-histogram, adaptive or integral
+    @Value("${barcode.decode.binarizer.full-frame:hybrid}")
+    Binarization fullFrameBinarizer = Binarization.HYBRID;
+    @Value("${barcode.decode.binarizer.candidate:hybrid}")
+    Binarization candidateBinarizer = Binarization.HYBRID;
+    @Value("${barcode.decode.binarizer.deskewed:hybrid}")
+    Binarization deskewedBinarizer = Binarization.HYBRID;
+    @Value("${barcode.decode.binarizer.inverted:hybrid}")
+    Binarization invertedBinarizer = Binarization.HYBRID;
+    // Multi-symbol scans and the tracked boxes of video streams
+    @Value("${barcode.decode.binarizer.multi:hybrid}")
+    Binarization multiBinarizer = Binarization.HYBRID;
+
+    private ExecutorService decodePool;
+
+    @PostConstruct
+    void start() {
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger counter = new AtomicInteger();
+        // Bounded queue; when it is full the submitting request thread runs the attempt itself
+        decodePool = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(poolSize * 16),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "pdf417-decode-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    @PreDestroy
+    void stop() {
+        decodePool.shutdownNow();
+    }
+
+    public String decodePDF417(Mat croppedImage) {
+        return decode(croppedImage, HybridBinarizer::new, false);
+    }
+
+    /**
+     * Decodes with the given binarizer, optionally on the inverted image (light bars on dark).
+     */
+    public String decode(Mat croppedImage, Function<LuminanceSource, Binarizer> binarizer, boolean inverted) {
+        try {
+            if (!debugDumpDir.isBlank()) {
+                dump(croppedImage);
+            }
+
+            // Decode using Zxing straight from the Mat, no image codec round trip
+            try (MatLuminanceSource source = new MatLuminanceSource(croppedImage)) {
+                return READER.decode(bitmap(source, binarizer, inverted), HINTS).getText();
+            }
+
+        } catch (Exception e) {
+            return null; // Failed to decode
+        }
+    }
+
+    /**
+     * Every symbol ZXing finds in the region, with bounding boxes in the coordinates of the image
+     * the region was cut from. Empty when nothing decodes.
+     */
+    public List<DecodedSymbol> decodeSymbols(Mat region) {
+        try (MatLuminanceSource source = new MatLuminanceSource(region)) {
+            Result[] results = READER.decodeMultiple(bitmap(source, multiBinarizer::create, false), HINTS);
+            Size whole = new Size();
+            Point offset = new Point();
+            region.locateROI(whole, offset);
+            List<DecodedSymbol> symbols = new ArrayList<>(results.length);
+            for (Result result : results) {
+                symbols.add(symbol(result, (int) offset.x, (int) offset.y, region));
+            }
+            return symbols;
+        } catch (Exception e) {
+            return List.of();
+        }
+    }
+
+    private static BinaryBitmap bitmap(MatLuminanceSource image, Function<LuminanceSource, Binarizer> binarizer,
+                                       boolean inverted) {
+        LuminanceSource source = inverted ? image.invert() : image;
+        return new BinaryBitmap(binarizer.apply(source));
+    }
+
+    /**
+     * The box spanned by the result's corner points; the whole region when ZXing reports none.
+     */
+    private static DecodedSymbol symbol(Result result, int offsetX, int offsetY, Mat region) {
+        float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE, maxX = -1, maxY = -1;
+        ResultPoint[] points = result.getResultPoints();
+        for (ResultPoint point : points != null ? points : new ResultPoint[0]) {
+            if (point != null) {
+                minX = Math.min(minX, point.getX());
+                minY = Math.min(minY, point.getY());
+                maxX = Math.max(maxX, point.getX());
+                maxY = Math.max(maxY, point.getY());
+            }
+        }
+        if (maxX < 0) {
+            return new DecodedSymbol(result.getText(), offsetX, offsetY, region.cols(), region.rows());
+        }
+        int x = (int) Math.floor(minX);
+        int y = (int) Math.floor(minY);
+        return new DecodedSymbol(result.getText(), offsetX + x, offsetY + y,
+                (int) Math.ceil(maxX) - x + 1, (int) Math.ceil(maxY) - y + 1);
+    }
+
+    /**
+     * Decodes the whole frame as-is, recorded as the full-frame path.
+     */
+    public String decodeFullFrame(Mat image) {
+        return scanMetrics.attempt(ScanMetrics.FULL_FRAME, null, () -> decode(image, fullFrameBinarizer::create, false));
+    }
+
+    /**
+     * Decodes the whole frame inverted, for symbols printed light on dark.
+     */
+    public String decodeInverted(Mat image) {
+        return scanMetrics.attempt(ScanMetrics.INVERTED, null, () -> decode(image, invertedBinarizer::create, true));
+    }
+
+    /**
+     * Decodes the whole frame with a single global threshold, which copes better than the local
+     * one with low-contrast symbols that fill most of the frame.
+     */
+    public String decodeGlobalHistogram(Mat image) {
+        return scanMetrics.attempt(ScanMetrics.GLOBAL_HISTOGRAM, null,
+                () -> decode(image, GlobalHistogramBinarizer::new, false));
+    }
+
+    /**
+     * Decodes every candidate both as-is and straightened to its estimated orientation, concurrently.
+     * Returns the first successful text, or {@code null} when no attempt succeeds.
+     * <p>
+     * Each attempt holds its own reference to the candidate pixels, so the caller may release
+     * the candidates as soon as this returns even if abandoned attempts are still running.
+     */
+    public String decodeFirst(List<Mat> candidates) {
+        return decodeFirst(candidates, Deadline.none());
+    }
+
+    /**
+     * As {@link #decodeFirst(List)}, but gives up and cancels the outstanding attempts once
+     * {@code deadline} passes.
+     */
+    public String decodeFirst(List<Mat> candidates, Deadline deadline) {
+        return decodeConcurrently(candidates, true, true, deadline);
+    }
+
+    /**
+     * Decodes the candidates as-is, concurrently; first success wins.
+     */
+    public String decodeCandidates(List<Mat> candidates, Deadline deadline) {
+        return decodeConcurrently(candidates, true, false, deadline);
+    }
+
+    /**
+     * Decodes the regions that are not upright once each, straightened to their estimated
+     * orientation, concurrently; first success wins.
+     */
+    public String decodeDeskewed(List<Mat> regions, Deadline deadline) {
+        return decodeConcurrently(regions, false, true, deadline);
+    }
+
+    private String decodeConcurrently(List<Mat> candidates, boolean asIs, boolean deskewed, Deadline deadline) {
+        List<Callable<String>> attempts = new ArrayList<>(candidates.size() * 2);
+        List<Runnable> abandon = new ArrayList<>(candidates.size() * 2);
+        // Attempts run on pool threads, so their spans are parented explicitly
+        Observation parent = scanMetrics.currentObservation();
+        for (Mat probable : candidates) {
+            if (probable.empty()) {
+                continue;
+            }
+            if (asIs) {
+                attempts.add(onView(probable, view -> decodeCandidate(view, parent), abandon));
+            }
+            if (deskewed) {
+                attempts.add(onView(probable, view -> decodeDeskewed(view, parent), abandon));
+            }
+        }
+        try {
+            return firstSuccess(attempts, deadline);
+        } finally {
+            abandon.forEach(Runnable::run);
+        }
+    }
+
+    /**
+     * Decodes every region concurrently and returns all symbols found in those that finished by
+     * {@code deadline}. Regions may overlap, so the same symbol can be returned more than once.
+     */
+    public List<DecodedSymbol> decodeAll(List<Mat> regions, Deadline deadline) {
+        List<Callable<List<DecodedSymbol>>> attempts = new ArrayList<>(regions.size());
+        List<Runnable> abandon = new ArrayList<>(regions.size());
+        Observation parent = scanMetrics.currentObservation();
+        for (Mat region : regions) {
+            if (!region.empty()) {
+                attempts.add(onView(region, view -> scanMetrics.attempt(ScanMetrics.MULTI, parent,
+                        () -> decodeSymbols(view), symbols -> !symbols.isEmpty()), abandon));
+            }
+        }
+        try {
+            List<DecodedSymbol> symbols = new ArrayList<>();
+            for (List<DecodedSymbol> found : allResults(attempts, deadline)) {
+                symbols.addAll(found);
+            }
+            return symbols;
+        } finally {
+            abandon.forEach(Runnable::run);
+        }
+    }
+
+    /**
+     * Runs {@code work} on its own view of {@code probable}. Whoever claims the attempt first,
+     * the worker or the canceller added to {@code abandon}, releases the view.
+     */
+    private static <T> Callable<T> onView(Mat probable, Function<Mat, T> work, List<Runnable> abandon) {
+        Mat view = probable.submat(0, probable.rows(), 0, probable.cols());
+        AtomicBoolean claimed = new AtomicBoolean();
+        abandon.add(() -> {
+            if (claimed.compareAndSet(false, true)) {
+                view.release();
+            }
+        });
+        return () -> {
+            if (!claimed.compareAndSet(false, true)) {
+                return null;
+            }
+            try {
+                return work.apply(view);
+            } finally {
+                view.release();
+            }
+        };
+    }
+
+    private String decodeCandidate(Mat probable, Observation parent) {
+        return scanMetrics.attempt(ScanMetrics.CANDIDATE, parent, () -> decode(probable, candidateBinarizer::create, false));
+    }
+
+    /**
+     * One targeted attempt at the estimated orientation; upright regions are skipped, as the
+     * as-is attempt already covers them.
+     */
+    private String decodeDeskewed(Mat probable, Observation parent) {
+        double skew = Orientation.estimateSkew(probable);
+        if (Math.abs(skew) < Orientation.UPRIGHT_TOLERANCE) {
+            return null;
+        }
+        Mat mat = scanMetrics.stage(ScanMetrics.ROTATE, parent, () -> {
+            Mat straightened = new Mat();
+            Orientation.straighten(probable, skew, straightened);
+            return straightened;
+        }, Mat::empty);
+        try {
+            return scanMetrics.attempt(ScanMetrics.DESKEWED, parent, () -> decode(mat, deskewedBinarizer::create, false));
+        } finally {
+            mat.release();
+        }
+    }
+
+    /**
+     * Same attempts as {@link #decodeFirst(List)} but run one after another on the calling thread,
+     * for callers that already provide their own parallelism.
+     */
+    public String decodeSequentially(List<Mat> candidates) {
+        for (Mat probable : candidates) {
+            String decodedText = decodeCandidate(probable, null);
+            if (decodedText == null) {
+                decodedText = decodeDeskewed(probable, null);
+            }
+            if (decodedText != null && !decodedText.isEmpty()) {
+                return decodedText;
+            }
+        }
+        return null;
+    }
+
+    String firstSuccess(List<Callable<String>> attempts) {
+        return firstSuccess(attempts, Deadline.none());
+    }
+
+    String firstSuccess(List<Callable<String>> attempts, Deadline deadline) {
+        if (attempts.isEmpty()) {
+            return null;
+        }
+        CompletionService<String> completion = new ExecutorCompletionService<>(decodePool);
+        List<Future<String>> futures = new ArrayList<>(attempts.size());
+        try {
+            for (Callable<String> attempt : attempts) {
+                futures.add(completion.submit(attempt));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                Future<String> done = deadline.isNone()
+                        ? completion.take()
+                        : completion.poll(deadline.remainingNanos(), TimeUnit.NANOSECONDS);
+                if (done == null) {
+                    return null;
+                }
+                String decodedText = done.get();
+                if (decodedText != null && !decodedText.isEmpty()) {
+                    return decodedText;
+                }
+            }
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            return null;
+        } finally {
+            // Attempts that have not started yet are dropped; running ones finish and are ignored
+            for (Future<String> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Non-null results of the attempts that finish by {@code deadline}; the others are cancelled.
+     */
+    <T> List<T> allResults(List<Callable<T>> attempts, Deadline deadline) {
+        List<T> results = new ArrayList<>(attempts.size());
+        if (attempts.isEmpty()) {
+            return results;
+        }
+        CompletionService<T> completion = new ExecutorCompletionService<>(decodePool);
+        List<Future<T>> futures = new ArrayList<>(attempts.size());
+        try {
+            for (Callable<T> attempt : attempts) {
+                futures.add(completion.submit(attempt));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                Future<T> done = deadline.isNone()
+                        ? completion.take()
+                        : completion.poll(deadline.remainingNanos(), TimeUnit.NANOSECONDS);
+                if (done == null) {
+                    break;
+                }
+                T result = resultOf(done);
+                if (result != null) {
+                    results.add(result);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            for (Future<T> future : futures) {
+                future.cancel(true);
+            }
+        }
+        return results;
+    }
+
+    private static <T> T resultOf(Future<T> done) throws InterruptedException {
+        try {
+            return done.get();
+        } catch (ExecutionException e) {
+            return null;
+        }
+    }
+
+    public void rotate90ACW(Mat inputImage, Mat outputImage) {
+        // Exact transpose and flip: no interpolation, and the result lands in outputImage
+        Core.rotate(inputImage, outputImage, Core.ROTATE_90_COUNTERCLOCKWISE);
+    }
+
+    /**
+     * Writes a Mat handed to ZXing into the debug dump directory. Attempts run in parallel, so
+     * the file name carries a sequence number besides the time. Failures are logged, not thrown,
+     * so dumping never changes a decode's outcome.
+     */
+    private void dump(Mat image) {
+        String fileName = LocalDateTime.now().format(DUMP_TIME) + "-" + DUMP_SEQUENCE.incrementAndGet() + ".png";
+        try {
+            saveBarcodeToFolder(image, debugDumpDir, fileName);
+        } catch (RuntimeException e) {
+            log.warn("Debug dump failed: {}", e.getMessage());
+        }
+    }
+
+    public void saveBarcodeToFolder(Mat barcodeImage, String folderPath, String fileName) {
+        // Ensure the folder exists or create it
+        File folder = new File(folderPath);
+        if (!folder.exists()) {
+            boolean created = folder.mkdirs();
+            if (!created) {
+                throw new RuntimeException("Failed to create directory: " + folderPath);
+            }
+        }
+
+        // Construct the full file path
+        String fullPath = folderPath + File.separator + fileName;
+
+        // Save the image
+        boolean success = Imgcodecs.imwrite(fullPath, barcodeImage);
+        if (!success) {
+            throw new RuntimeException("Failed to save barcode image to: " + fullPath);
+        }
+
+        log.debug("Barcode image saved to {}", fullPath);
+    }
+}
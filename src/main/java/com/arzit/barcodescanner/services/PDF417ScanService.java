@@ -0,0 +1,209 @@
+package com.arzit.barcodescanner.services;
+
+import com.arzit.barcodescanner.metrics.ScanMetrics;
+
+import org.opencv.core.Mat;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Full scan of one image through the {@link DecodeStrategyScheduler}.
+ * Outcomes for uploads are served from and recorded in the {@link DecodeResultCache}. Uploads too
+ * large to decode in memory are scanned in tiles by the {@link TiledImageScanner}.
+ * Multi-symbol scans bypass the scheduler and the cache: every region is decoded and all symbols
+ * are returned.
+ * Native Mats created for a scan are released through a {@link MatScope} when it ends.
+ */
+@Service
+public class PDF417ScanService {
+
+    @Autowired
+    DecodeStrategyScheduler decodeStrategyScheduler;
+    @Autowired
+    ImageIngestionService imageIngestionService;
+    @Autowired
+    DecodeResultCache decodeResultCache;
+    @Autowired
+    TiledImageScanner tiledImageScanner;
+    @Autowired
+    BarcodeLocator barcodeLocator;
+    @Autowired
+    PDF417Decoder pdf417Decoder;
+    @Autowired
+    OcrFallback ocrFallback;
+    @Autowired
+    ScanMetrics scanMetrics;
+
+    // Candidate regions located for a multi-symbol scan, in addition to the full frame
+    @Value("${barcode.multi.max-candidates:8}")
+    int multiMaxCandidates = 8;
+
+    /**
+     * Scans encoded upload bytes, consulting the result cache first.
+     */
+    public ScanResult scan(byte[] upload) {
+        return scan(upload, Deadline.none(), "single");
+    }
+
+    /**
+     * Scans encoded upload bytes; fallbacks not started by {@code deadline} are skipped.
+     * {@code endpoint} tags the scan's metrics.
+     */
+    public ScanResult scan(byte[] upload, Deadline deadline, String endpoint) {
+        return scanMetrics.scan(endpoint, () -> scanUpload(upload, null, deadline), ScanResult::error);
+    }
+
+    /**
+     * Scans an upload of {@code size} bytes, read only once it fits in memory: an upload too large
+     * to decode in memory first reserves its encoded bytes from the large-image memory budget.
+     */
+    public ScanResult scan(long size, DecodeJobService.Upload upload) throws IOException {
+        if (!imageIngestionService.requiresTiling(size)) {
+            return scan(upload.read());
+        }
+        try (TiledImageScanner.Reservation reservation = tiledImageScanner.reserveUpload(size, Deadline.none())) {
+            if (reservation == null) {
+                return ScanResult.failed(ScanResult.DEADLINE_EXCEEDED);
+            }
+            byte[] bytes = upload.read();
+            return scanMetrics.scan("single", () -> scanUpload(bytes, reservation, Deadline.none()), ScanResult::error);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return ScanResult.failed(ScanResult.DEADLINE_EXCEEDED);
+        }
+    }
+
+    private ScanResult scanUpload(byte[] upload, TiledImageScanner.Reservation reservation, Deadline deadline) {
+        String contentKey = null;
+        if (decodeResultCache.isEnabled()) {
+            contentKey = decodeResultCache.contentKey(upload);
+            ScanResult cached = decodeResultCache.get(contentKey);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        // The header is read once, for both the tiling decision and the in-memory decode
+        ImageIngestionService.ImageHeader header = imageIngestionService.probe(upload);
+        if (imageIngestionService.requiresTiling(upload, header)) {
+            ScanResult result = reservation != null
+                    ? tiledImageScanner.scan(upload, reservation, deadline)
+                    : tiledImageScanner.scan(upload, deadline);
+            if (contentKey != null && cacheable(result)) {
+                decodeResultCache.put(contentKey, result);
+            }
+            return result;
+        }
+
+        try (MatScope scope = MatScope.open()) {
+            Mat inputImage = scope.track(imageIngestionService.decode(upload, header));
+            if (contentKey == null) {
+                return scan(inputImage, deadline);
+            }
+            return scanAndCache(contentKey, inputImage, deadline);
+        }
+    }
+
+    private ScanResult scanAndCache(String contentKey, Mat inputImage, Deadline deadline) {
+        DecodeResultCache.PerceptualKey perceptualKey = null;
+        if (decodeResultCache.isPerceptualEnabled() && !inputImage.empty()) {
+            perceptualKey = decodeResultCache.perceptualKey(inputImage);
+            ScanResult similar = decodeResultCache.getSimilar(perceptualKey);
+            if (similar != null) {
+                decodeResultCache.put(contentKey, similar);
+                return similar;
+            }
+        }
+
+        ScanResult result = scan(inputImage, deadline);
+        if (!cacheable(result)) {
+            return result;
+        }
+        decodeResultCache.put(contentKey, result);
+        if (perceptualKey != null) {
+            decodeResultCache.putSimilar(perceptualKey, result);
+        }
+        return result;
+    }
+
+    /**
+     * False for outcomes that say nothing lasting about the image, so a retry may do better: an
+     * exceeded deadline, and a symbol that did not decode while the OCR fallback, enabled, read
+     * nothing beside it, as the read may have been skipped for lack of time or engines.
+     */
+    private boolean cacheable(ScanResult result) {
+        if (ScanResult.DEADLINE_EXCEEDED.equals(result.error())) {
+            return false;
+        }
+        return !(ScanResult.NO_VALID_BARCODE.equals(result.error()) && result.ocrText() == null && ocrFallback.isEnabled());
+    }
+
+    /**
+     * Scans a raw 8-bit grayscale frame, see {@link ImageIngestionService#readRaw}. Frames are not
+     * cached: consecutive camera frames are rarely byte-identical.
+     */
+    public ScanResult scanRaw(InputStream body, long length, int width, int height, int stride) throws IOException {
+        try {
+            return scanMetrics.scan("raw", () -> {
+                try (MatScope scope = MatScope.open()) {
+                    Mat frame = scope.track(imageIngestionService.readRaw(body, length, width, height, stride));
+                    return scan(frame, Deadline.none());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, ScanResult::error);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Decodes every PDF417 symbol in the upload: the full frame and all located candidates, each
+     * with ZXing's multi-symbol detector, concurrently. Duplicates found in overlapping regions are
+     * dropped.
+     */
+    public MultiScanResult scanAll(byte[] upload, Deadline deadline) {
+        return scanMetrics.scan("multi", () -> scanAllUpload(upload, deadline), MultiScanResult::error);
+    }
+
+    private MultiScanResult scanAllUpload(byte[] upload, Deadline deadline) {
+        try (MatScope scope = MatScope.open()) {
+            Mat inputImage = scope.track(imageIngestionService.decode(upload));
+            if (inputImage.empty()) {
+                return MultiScanResult.failed(ScanResult.UNREADABLE_IMAGE);
+            }
+            List<Mat> candidates = scope.trackAll(barcodeLocator.cropImageBarcode(inputImage, multiMaxCandidates));
+            List<Mat> regions = new ArrayList<>(candidates.size() + 1);
+            regions.add(inputImage);
+            regions.addAll(candidates);
+
+            List<DecodedSymbol> symbols = DecodedSymbol.distinct(pdf417Decoder.decodeAll(regions, deadline));
+            if (!symbols.isEmpty()) {
+                return MultiScanResult.decoded(symbols);
+            }
+            if (deadline.expired()) {
+                return MultiScanResult.failed(ScanResult.DEADLINE_EXCEEDED);
+            }
+            return MultiScanResult.failed(candidates.isEmpty() ? ScanResult.NO_BARCODE : ScanResult.NO_VALID_BARCODE);
+        }
+    }
+
+    public ScanResult scan(Mat inputImage) {
+        return scan(inputImage, Deadline.none());
+    }
+
+    public ScanResult scan(Mat inputImage, Deadline deadline) {
+        if (inputImage.empty()) {
+            return ScanResult.failed(ScanResult.UNREADABLE_IMAGE);
+        }
+        // Full frame, candidates, rotations and alternative binarizations, in adaptive order
+        return decodeStrategyScheduler.decode(inputImage, deadline);
+    }
+}
@@ -0,0 +1,40 @@
+package com.arzit.barcodescanner.services;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.pdf417.PDF417Writer;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+/**
+ * Renders PDF417 symbols with ZXing's writer, for the start-up warm-up, the benchmarks and the
+ * tests, none of which ship image files.
+ */
+public final class PDF417Symbols {
+
+    private PDF417Symbols() {
+    }
+
+    /**
+     * {@code text} as an 8-bit grayscale symbol, black on white, of about {@code width x height}
+     * pixels; the writer rounds to whole modules.
+     */
+    public static Mat render(String text, int width, int height) {
+        BitMatrix bits;
+        try {
+            bits = new PDF417Writer().encode(text, BarcodeFormat.PDF_417, width, height);
+        } catch (WriterException e) {
+            throw new IllegalArgumentException("Cannot encode " + text.length() + " characters as PDF417", e);
+        }
+        Mat mat = new Mat(bits.getHeight(), bits.getWidth(), CvType.CV_8UC1);
+        byte[] row = new byte[bits.getWidth()];
+        for (int y = 0; y < bits.getHeight(); y++) {
+            for (int x = 0; x < bits.getWidth(); x++) {
+                row[x] = (byte) (bits.get(x, y) ? 0 : 255);
+            }
+            mat.put(y, 0, row);
+        }
+        return mat;
+    }
+}
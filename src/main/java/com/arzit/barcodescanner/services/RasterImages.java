@@ -0,0 +1,107 @@
+package com.arzit.barcodescanner.services;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageInputStreamImpl;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+
+/**
+ * Helpers for images read through ImageIO or rendered by PDFBox rather than decoded by OpenCV.
+ */
+final class RasterImages {
+
+    private RasterImages() {
+    }
+
+    /**
+     * A seekable stream over encoded bytes, without copying them.
+     */
+    static ImageInputStream open(byte[] bytes) {
+        return new ByteArrayImageInputStream(bytes);
+    }
+
+    /**
+     * Converts to an 8-bit grayscale Mat row by row, with OpenCV's BGR to gray weights, so no
+     * full-size intermediate is created.
+     */
+    static Mat toGray(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        Mat gray = new Mat(height, width, CvType.CV_8UC1);
+        byte[] row = new byte[width];
+        int type = image.getType();
+        if ((type == BufferedImage.TYPE_BYTE_GRAY || type == BufferedImage.TYPE_3BYTE_BGR)
+                && image.getRaster().getDataBuffer() instanceof DataBufferByte buffer) {
+            byte[] data = buffer.getData();
+            int channels = type == BufferedImage.TYPE_BYTE_GRAY ? 1 : 3;
+            for (int y = 0; y < height; y++) {
+                int offset = y * width * channels;
+                if (channels == 1) {
+                    System.arraycopy(data, offset, row, 0, width);
+                } else {
+                    for (int x = 0; x < width; x++, offset += 3) {
+                        row[x] = (byte) luma(data[offset + 2] & 0xFF, data[offset + 1] & 0xFF, data[offset] & 0xFF);
+                    }
+                }
+                gray.put(y, 0, row);
+            }
+            return gray;
+        }
+
+        int[] rgb = new int[width];
+        for (int y = 0; y < height; y++) {
+            image.getRGB(0, y, width, 1, rgb, 0, width);
+            for (int x = 0; x < width; x++) {
+                int pixel = rgb[x];
+                row[x] = (byte) luma((pixel >> 16) & 0xFF, (pixel >> 8) & 0xFF, pixel & 0xFF);
+            }
+            gray.put(y, 0, row);
+        }
+        return gray;
+    }
+
+    private static int luma(int red, int green, int blue) {
+        return (77 * red + 150 * green + 29 * blue + 128) >> 8;
+    }
+
+    /**
+     * Seekable view of the upload bytes; ImageIO's own streams would copy them to a cache
+     * first.
+     */
+    private static final class ByteArrayImageInputStream extends ImageInputStreamImpl {
+        private final byte[] bytes;
+
+        ByteArrayImageInputStream(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        public int read() {
+            if (streamPos >= bytes.length) {
+                return -1;
+            }
+            bitOffset = 0;
+            return bytes[(int) streamPos++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) {
+            if (streamPos >= bytes.length) {
+                return -1;
+            }
+            bitOffset = 0;
+            int count = (int) Math.min(length, bytes.length - streamPos);
+            System.arraycopy(bytes, (int) streamPos, buffer, offset, count);
+            streamPos += count;
+            return count;
+        }
+
+        @Override
+        public long length() {
+            return bytes.length;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.arzit.barcodescanner.services;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * State shared by the decode strategies of one scan. Candidate regions are located on first use
+ * and released when the context closes. The time spent locating is kept apart, so it is not
+ * charged to whichever strategy happened to ask first.
+ */
+public final class ScanContext implements AutoCloseable {
+
+    private final Mat image;
+    private final Deadline deadline;
+    private final BarcodeLocator barcodeLocator;
+    private final MatScope scope = MatScope.open();
+    private List<Mat> candidates;
+    private final List<Rect> symbols = new ArrayList<>();
+    private long locateNanos;
+
+    ScanContext(Mat image, Deadline deadline, BarcodeLocator barcodeLocator) {
+        this.image = image;
+        this.deadline = deadline;
+        this.barcodeLocator = barcodeLocator;
+    }
+
+    public Mat image() {
+        return image;
+    }
+
+    public Deadline deadline() {
+        return deadline;
+    }
+
+    public List<Mat> candidates() {
+        if (candidates == null) {
+            long start = System.nanoTime();
+            candidates = scope.trackAll(barcodeLocator.cropImageBarcode(image, symbols));
+            locateNanos = System.nanoTime() - start;
+        }
+        return candidates;
+    }
+
+    /**
+     * Box of the best located symbol, without the expansion of its candidate region, or null when
+     * none was located. Locates the candidates if no strategy has yet.
+     */
+    Rect symbol() {
+        candidates();
+        return symbols.isEmpty() ? null : symbols.get(0);
+    }
+
+    /**
+     * Time spent locating candidates so far; 0 until a strategy asks for them.
+     */
+    long locateNanos() {
+        return locateNanos;
+    }
+
+    /**
+     * The whole frame followed by the candidate regions.
+     */
+    public List<Mat> regions() {
+        List<Mat> regions = new ArrayList<>(candidates().size() + 1);
+        regions.add(image);
+        regions.addAll(candidates());
+        return regions;
+    }
+
+    /**
+     * True once localisation ran and found nothing.
+     */
+    boolean noCandidates() {
+        return candidates != null && candidates.isEmpty();
+    }
+
+    @Override
+    public void close() {
+        scope.close();
+    }
+}
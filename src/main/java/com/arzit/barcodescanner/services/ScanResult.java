@@ -0,0 +1,35 @@
+package com.arzit.barcodescanner.services;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * Outcome of scanning one image: either the decoded text or the reason nothing was decoded. A
+ * failed scan may carry {@code ocrText}, the printed text beside the symbol read by the
+ * {@link OcrFallback}; it is not the symbol's content.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record ScanResult(String text, String error, String ocrText) {
+
+    public static final String UNREADABLE_IMAGE = "Failed to process the image.";
+    public static final String NO_BARCODE = "No barcode detected.";
+    public static final String NO_VALID_BARCODE = "No valid PDF417 barcode found!";
+    public static final String DEADLINE_EXCEEDED = "Decode deadline exceeded.";
+
+    public static ScanResult decoded(String text) {
+        return new ScanResult(text, null, null);
+    }
+
+    public static ScanResult failed(String error) {
+        return new ScanResult(null, error, null);
+    }
+
+    public ScanResult withOcrText(String ocrText) {
+        return ocrText == null ? this : new ScanResult(text, error, ocrText);
+    }
+
+    @JsonIgnore
+    public boolean isDecoded() {
+        return text != null;
+    }
+}
@@ -0,0 +1,156 @@
+package com.arzit.barcodescanner.services;
+
+import com.arzit.barcodescanner.metrics.ScanMetrics;
+
+import org.opencv.core.*;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.imgproc.Imgproc;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the decode pipeline over generated samples before the application reports ready.
+ * <p>
+ * Spring Boot moves readiness to ACCEPTING_TRAFFIC only after application runners return, so
+ * while this runs {@code /actuator/health/readiness} answers OUT_OF_SERVICE and load balancers keep
+ * requests away. The passes pay for class loading, native initialisation, pool threads and JIT
+ * compilation of the hot paths instead of the first real requests. The passes are kept out of the
+ * scan metrics, and strategy statistics gathered on the samples are discarded afterwards so they do
+ * not bias the adaptive order.
+ */
+@Component
+public class ScanWarmup implements ApplicationRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(ScanWarmup.class);
+    private static final String PAYLOAD = "WARMUP 636014040002DL00410288ZC03290015DLDAQD1234562";
+
+    @Autowired
+    ImageIngestionService imageIngestionService;
+    @Autowired
+    PDF417ScanService pdf417ScanService;
+    @Autowired
+    DecodeStrategyScheduler decodeStrategyScheduler;
+    @Autowired
+    ScanMetrics scanMetrics;
+
+    // Passes over the samples before readiness; 0 skips the warm-up
+    @Value("${barcode.warmup.iterations:20}")
+    int iterations = 20;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (iterations <= 0) {
+            return;
+        }
+        Samples samples = samples();
+        long start = System.nanoTime();
+        long first = 0;
+        long last = 0;
+        int failed = 0;
+        for (int pass = 0; pass < iterations; pass++) {
+            long passStart = System.nanoTime();
+            failed = scanMetrics.unrecorded(() -> pass(samples));
+            last = System.nanoTime() - passStart;
+            if (pass == 0) {
+                first = last;
+            }
+        }
+        decodeStrategyScheduler.resetStatistics();
+        log.info("Warm-up: {} passes in {} ms, first {} ms, last {} ms",
+                iterations, millis(System.nanoTime() - start), millis(first), millis(last));
+        if (failed > 0) {
+            log.warn("Warm-up: {} of {} samples did not decode", failed, samples.single().size() + 1);
+        }
+    }
+
+    /**
+     * One pass: every single-symbol sample through ingestion and the strategy scheduler, bypassing
+     * the result cache, and the multi-symbol sample through a multi scan. Returns the number of
+     * samples that did not decode.
+     */
+    int pass(Samples samples) {
+        int failed = 0;
+        for (byte[] sample : samples.single()) {
+            try (MatScope scope = MatScope.open()) {
+                if (!pdf417ScanService.scan(scope.track(imageIngestionService.decode(sample))).isDecoded()) {
+                    failed++;
+                }
+            }
+        }
+        if (pdf417ScanService.scanAll(samples.multi(), Deadline.none()).symbols() == null) {
+            failed++;
+        }
+        return failed;
+    }
+
+    record Samples(List<byte[]> single, byte[] multi) {
+    }
+
+    /**
+     * An upright symbol as JPEG, the same symbol skewed on a larger PNG page so the locate and
+     * deskew paths run, and two symbols on one page for multi scans.
+     */
+    static Samples samples() {
+        Mat symbol = PDF417Symbols.render(PAYLOAD, 600, 200);
+        List<Mat> pages = new ArrayList<>();
+        try {
+            Mat upright = page(1280, 960);
+            place(symbol, upright, 340, 380);
+            pages.add(upright);
+
+            Mat skewed = page(1920, 1440);
+            place(symbol, skewed, 660, 620);
+            Mat rotation = Imgproc.getRotationMatrix2D(new Point(960, 720), 15, 1);
+            Imgproc.warpAffine(skewed, skewed, rotation, skewed.size(), Imgproc.INTER_LINEAR, Core.BORDER_CONSTANT, new Scalar(255));
+            rotation.release();
+            pages.add(skewed);
+
+            Mat multi = page(1600, 1200);
+            place(symbol, multi, 100, 150);
+            place(symbol, multi, 800, 800);
+            pages.add(multi);
+
+            for (Mat page : pages) {
+                // Softened like a camera capture
+                Imgproc.GaussianBlur(page, page, new Size(3, 3), 0);
+            }
+            return new Samples(List.of(encode(upright, ".jpg"), encode(skewed, ".png")), encode(multi, ".png"));
+        } finally {
+            symbol.release();
+            pages.forEach(Mat::release);
+        }
+    }
+
+    private static Mat page(int width, int height) {
+        return new Mat(height, width, CvType.CV_8UC1, new Scalar(255));
+    }
+
+    private static void place(Mat symbol, Mat page, int x, int y) {
+        Mat target = page.submat(new Rect(x, y, symbol.cols(), symbol.rows()));
+        symbol.copyTo(target);
+        target.release();
+    }
+
+    private static byte[] encode(Mat mat, String extension) {
+        MatOfByte encoded = new MatOfByte();
+        try {
+            Imgcodecs.imencode(extension, mat, encoded);
+            return encoded.toArray();
+        } finally {
+            encoded.release();
+        }
+    }
+
+    private static long millis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+}
@@ -0,0 +1,265 @@
+package com.arzit.barcodescanner.services;
+
+import com.arzit.barcodescanner.metrics.ScanMetrics;
+
+import jakarta.annotation.PostConstruct;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Rectangle;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scans images too large to decode in memory, reading only bounded parts of them.
+ * <p>
+ * The image is never decoded whole. A subsampled overview is read with {@link ImageReader}
+ * source subsampling and localised by the {@link BarcodeLocator}; each candidate is then read
+ * back as a region of the original, at full resolution when it fits, and decoded through the
+ * {@link DecodeStrategyScheduler}. Reads happen one at a time per scan and never exceed
+ * {@code tile-pixels}; every read first reserves its estimated memory from a budget shared by all
+ * large scans, so concurrent huge uploads wait for memory instead of exhausting it. The encoded
+ * upload is held for the whole scan and so is reserved from the same budget, before it is read
+ * where the caller can defer the read. No wait outlasts the scan's deadline or {@code max-wait-ms}.
+ */
+@Service
+public class TiledImageScanner {
+
+    // Estimated peak memory per pixel read: the decoded raster (up to 4 bytes), the grayscale Mat,
+    // and the decode working set (luminance copy, deskewed copies)
+    static final long BYTES_PER_PIXEL = 10;
+
+    @Autowired
+    BarcodeLocator barcodeLocator;
+    @Autowired
+    DecodeStrategyScheduler decodeStrategyScheduler;
+    @Autowired
+    ScanMetrics scanMetrics;
+
+    // Most pixels one read (the overview or a candidate tile) may produce
+    @Value("${barcode.large.tile-pixels:16777216}")
+    long tilePixels = 16L * 1024 * 1024;
+
+    // Memory all large-image reads in flight may hold together
+    @Value("${barcode.large.memory-bytes:268435456}")
+    long memoryBytes = 256L * 1024 * 1024;
+
+    // Longest wait for memory when the scan has no deadline of its own
+    @Value("${barcode.large.max-wait-ms:30000}")
+    long maxWaitMs = 30_000;
+
+    // Reserved in KiB so the budget fits a semaphore's int permits
+    private Semaphore memory;
+    private int memoryPermits;
+
+    @PostConstruct
+    void start() {
+        memoryPermits = (int) Math.min(Integer.MAX_VALUE, Math.max(1, memoryBytes / 1024));
+        memory = new Semaphore(memoryPermits, true);
+    }
+
+    /**
+     * Scans encoded image bytes in tiles; reads not started by {@code deadline} are skipped. The
+     * decode time budget covers the whole scan, not each tile.
+     */
+    public ScanResult scan(byte[] upload, Deadline deadline) {
+        Deadline budgeted = decodeStrategyScheduler.budgeted(deadline);
+        try (Reservation reservation = reserveUpload(upload.length, budgeted)) {
+            if (reservation == null) {
+                return ScanResult.failed(ScanResult.DEADLINE_EXCEEDED);
+            }
+            return scanReserved(upload, reservation, budgeted);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return ScanResult.failed(ScanResult.DEADLINE_EXCEEDED);
+        }
+    }
+
+    /**
+     * Scans encoded image bytes whose memory was reserved with {@link #reserveUpload} before they
+     * were read; the reservation stays with the caller.
+     */
+    public ScanResult scan(byte[] upload, Reservation uploadReservation, Deadline deadline) {
+        return scanReserved(upload, uploadReservation, decodeStrategyScheduler.budgeted(deadline));
+    }
+
+    private ScanResult scanReserved(byte[] upload, Reservation uploadReservation, Deadline deadline) {
+        try (ImageInputStream input = RasterImages.open(upload)) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                return ScanResult.failed(ScanResult.UNREADABLE_IMAGE);
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, false, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                scanMetrics.recordImage(upload.length, (long) width * height);
+                return scan(reader, width, height, uploadReservation.bytes, deadline);
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException | UncheckedIOException e) {
+            return ScanResult.failed(ScanResult.UNREADABLE_IMAGE);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return ScanResult.failed(ScanResult.DEADLINE_EXCEEDED);
+        }
+    }
+
+    /**
+     * Reserves memory for an encoded upload of {@code bytes}, to be held until its scan ends.
+     * Returns null when the memory does not free up in time; refuses uploads that leave the budget
+     * no room for a read.
+     */
+    public Reservation reserveUpload(long bytes, Deadline deadline) throws InterruptedException {
+        if (bytes >= memoryBytes) {
+            throw new ImageRejectedException("Upload of " + bytes + " bytes exceeds the large-image memory budget of "
+                    + memoryBytes + " bytes.");
+        }
+        return reserve(bytes, deadline);
+    }
+
+    private ScanResult scan(ImageReader reader, int width, int height, long uploadBytes, Deadline deadline)
+            throws InterruptedException {
+        // Reads are sized so that one always fits next to the upload
+        long readPixels = Math.max(1, Math.min(tilePixels, (memoryBytes - uploadBytes) / BYTES_PER_PIXEL));
+        Rect whole = new Rect(0, 0, width, height);
+        int overviewStep = subsampling(width, height, readPixels);
+
+        List<Rect> candidates;
+        try (Reservation reservation = reserve(whole, overviewStep, deadline)) {
+            if (reservation == null) {
+                return ScanResult.failed(ScanResult.DEADLINE_EXCEEDED);
+            }
+            Mat overview = read(reader, whole, overviewStep);
+            try {
+                if (overviewStep == 1) {
+                    // The whole image fits one read; only its encoded size was too large
+                    return decodeStrategyScheduler.decode(overview, deadline);
+                }
+                // The locator downscales further with area averaging, which smooths out the aliasing
+                // of the subsampled read; its kernel is sized for the original resolution
+                candidates = scanMetrics.stage(ScanMetrics.LOCATE, null,
+                        () -> barcodeLocator.locate(overview, overviewStep), List::isEmpty);
+            } finally {
+                overview.release();
+            }
+        }
+        if (candidates.isEmpty()) {
+            return ScanResult.failed(ScanResult.NO_BARCODE);
+        }
+
+        for (Rect candidate : candidates) {
+            if (deadline.expired()) {
+                return ScanResult.failed(ScanResult.DEADLINE_EXCEEDED);
+            }
+            Rect tile = toSource(candidate, overviewStep, width, height);
+            int tileStep = subsampling(tile.width, tile.height, readPixels);
+            try (Reservation reservation = reserve(tile, tileStep, deadline)) {
+                if (reservation == null) {
+                    return ScanResult.failed(ScanResult.DEADLINE_EXCEEDED);
+                }
+                Mat region = read(reader, tile, tileStep);
+                try {
+                    ScanResult result = decodeStrategyScheduler.decode(region, deadline);
+                    if (result.isDecoded() || ScanResult.DEADLINE_EXCEEDED.equals(result.error())) {
+                        return result;
+                    }
+                } finally {
+                    region.release();
+                }
+            }
+        }
+        return ScanResult.failed(ScanResult.NO_VALID_BARCODE);
+    }
+
+    /**
+     * Memory reserved for large-image reads in flight, in bytes.
+     */
+    public long reservedBytes() {
+        return (memoryPermits - (long) memory.availablePermits()) * 1024;
+    }
+
+    /**
+     * Smallest subsampling step at which a {@code width x height} region reads as at most
+     * {@code maxPixels} pixels.
+     */
+    static int subsampling(long width, long height, long maxPixels) {
+        int step = (int) Math.max(1, Math.floor(Math.sqrt((double) width * height / maxPixels)));
+        while (ceilDiv(width, step) * ceilDiv(height, step) > maxPixels) {
+            step++;
+        }
+        return step;
+    }
+
+    /**
+     * Maps a region of the overview back to the original image.
+     */
+    static Rect toSource(Rect region, int step, int width, int height) {
+        int x = Math.min(width, region.x * step);
+        int y = Math.min(height, region.y * step);
+        int right = Math.min(width, (region.x + region.width) * step);
+        int bottom = Math.min(height, (region.y + region.height) * step);
+        return new Rect(x, y, right - x, bottom - y);
+    }
+
+    private Reservation reserve(Rect region, int step, Deadline deadline) throws InterruptedException {
+        return reserve(ceilDiv(region.width, step) * ceilDiv(region.height, step) * BYTES_PER_PIXEL, deadline);
+    }
+
+    private Reservation reserve(long bytes, Deadline deadline) throws InterruptedException {
+        int permits = (int) Math.min(memoryPermits, Math.max(1, ceilDiv(bytes, 1024)));
+        long waitNanos = Math.min(TimeUnit.MILLISECONDS.toNanos(maxWaitMs), Math.max(0, deadline.remainingNanos()));
+        if (!memory.tryAcquire(permits, waitNanos, TimeUnit.NANOSECONDS)) {
+            return null;
+        }
+        return new Reservation(bytes, permits);
+    }
+
+    private Mat read(ImageReader reader, Rect region, int step) {
+        return scanMetrics.stage(ScanMetrics.INGEST, null, () -> {
+            ImageReadParam param = reader.getDefaultReadParam();
+            param.setSourceRegion(new Rectangle(region.x, region.y, region.width, region.height));
+            param.setSourceSubsampling(step, step, 0, 0);
+            try {
+                return RasterImages.toGray(reader.read(0, param));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, Mat::empty);
+    }
+
+    private static long ceilDiv(long value, long divisor) {
+        return (value + divisor - 1) / divisor;
+    }
+
+    /**
+     * Memory reserved from the large-image budget; closing it returns the memory.
+     */
+    public final class Reservation implements AutoCloseable {
+        private final long bytes;
+        private final int permits;
+
+        Reservation(long bytes, int permits) {
+            this.bytes = bytes;
+            this.permits = permits;
+        }
+
+        @Override
+        public void close() {
+            memory.release(permits);
+        }
+    }
+}
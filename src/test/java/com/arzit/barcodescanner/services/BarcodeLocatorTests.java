@@ -0,0 +1,76 @@
+package com.arzit.barcodescanner.services;
+
+import nu.pattern.OpenCV;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.Point;
+import org.opencv.core.Rect;
+import org.opencv.core.Size;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BarcodeLocatorTests {
+
+	@BeforeAll
+	static void loadOpenCV() {
+		OpenCV.loadLocally();
+	}
+
+	private static MatOfPoint box(int x, int y, int width, int height) {
+		return new MatOfPoint(new Point(x, y), new Point(x + width, y), new Point(x + width, y + height), new Point(x, y + height));
+	}
+
+	@Test
+	void ranksPdf417ShapedRegionsFirstAndDropsRepeats() {
+		BarcodeLocator locator = new BarcodeLocator();
+		List<Rect> candidates = locator.selectCandidates(List.of(
+				box(10, 10, 120, 120),      // square blob, penalised for its aspect ratio
+				box(1000, 1000, 300, 80),   // PDF417 shaped
+				box(1010, 1005, 280, 70),   // the same symbol again
+				box(100, 1500, 60, 20)),    // small, PDF417 shaped
+				1.0, new Size(3000, 2000));
+
+		assertEquals(3, candidates.size());
+		assertTrue(candidates.get(0).contains(new Point(1150, 1040)));
+		assertTrue(candidates.get(1).contains(new Point(70, 70)));
+		assertTrue(candidates.get(2).contains(new Point(130, 1510)));
+	}
+
+	@Test
+	void keepsNearbySymbolsWhoseExpandedRegionsOverlap() {
+		BarcodeLocator locator = new BarcodeLocator();
+		List<Rect> candidates = locator.selectCandidates(List.of(
+				box(1000, 1000, 300, 80),
+				box(1000, 1120, 300, 80)),  // 40 px below the first
+				1.0, new Size(3000, 2000));
+
+		assertEquals(2, candidates.size());
+		assertTrue(candidates.get(0).contains(new Point(1150, 1040)));
+		assertTrue(candidates.get(1).contains(new Point(1150, 1160)));
+	}
+
+	@Test
+	void picksPyramidLevelFromInputSize() {
+		BarcodeLocator locator = new BarcodeLocator();
+
+		assertEquals(0, locator.pyramidLevel(new Size(1024, 768)));
+		assertEquals(2, locator.pyramidLevel(new Size(4000, 3000)));
+		assertEquals(3, locator.pyramidLevel(new Size(6000, 8000)));
+		locator.maxDimension = 0;
+		assertEquals(0, locator.pyramidLevel(new Size(4000, 3000)));
+	}
+
+	@Test
+	void mapsLevelRegionsBackToFullResolution() {
+		BarcodeLocator locator = new BarcodeLocator();
+		List<Rect> candidates = locator.selectCandidates(List.of(box(250, 250, 74, 19)), 4.0, new Size(4000, 3000));
+
+		assertEquals(1, candidates.size());
+		// 300x80 symbol at (1000, 1000) in full resolution, expanded 5x around its centre
+		assertEquals(new Rect(400, 840, 1500, 400), candidates.get(0));
+	}
+}
@@ -0,0 +1,145 @@
+package com.arzit.barcodescanner.services;
+
+import com.arzit.barcodescanner.services.BatchDecodePipeline.BatchItem;
+import com.arzit.barcodescanner.services.BatchDecodePipeline.BatchResult;
+import nu.pattern.OpenCV;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.opencv.core.Mat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static com.arzit.barcodescanner.services.PDF417Samples.encode;
+import static com.arzit.barcodescanner.services.PDF417Samples.pdf417;
+import static com.arzit.barcodescanner.services.PDF417Samples.undecodablePage;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BatchDecodePipelineTests {
+
+	private ScanFixture fixture;
+	private BatchDecodePipeline pipeline;
+
+	@BeforeAll
+	static void loadOpenCV() {
+		OpenCV.loadLocally();
+	}
+
+	@BeforeEach
+	void setUp() {
+		fixture = new ScanFixture();
+		fixture.ingestion.maxBytes = 1024 * 1024;
+		fixture.ingestion.maxPixels = 10_000_000;
+		pipeline = new BatchDecodePipeline();
+		pipeline.imageIngestionService = fixture.ingestion;
+		pipeline.barcodeLocator = fixture.locator;
+		pipeline.pdf417Decoder = fixture.decoder;
+		pipeline.ocrFallback = fixture.ocr;
+		pipeline.scanMetrics = fixture.metrics;
+		pipeline.ingestThreads = 2;
+		pipeline.locateThreads = 1;
+		pipeline.decodeThreads = 2;
+		// Smaller than the batch, so the backpressure path is exercised
+		pipeline.queueCapacity = 2;
+		pipeline.pendingCapacity = 64;
+		pipeline.start();
+	}
+
+	@AfterEach
+	void tearDown() {
+		pipeline.stop();
+		fixture.close();
+	}
+
+	@Test
+	void deliversOneResultPerItem() throws Exception {
+		List<BatchItem> items = new ArrayList<>();
+		for (int i = 0; i < 12; i++) {
+			byte[] bytes = i % 4 == 3 ? new byte[]{1, 2, 3} : encode(pdf417("item-" + i, 400, 160), ".png");
+			assertTrue(pipeline.reserve(bytes.length));
+			items.add(new BatchItem(i, "item-" + i + ".png", bytes));
+		}
+		Map<Integer, BatchResult> results = new ConcurrentHashMap<>();
+		CountDownLatch done = new CountDownLatch(1);
+
+		pipeline.submit(items, result -> results.put(result.index(), result), done::countDown);
+
+		assertTrue(done.await(60, TimeUnit.SECONDS));
+		assertEquals(12, results.size());
+		for (int i = 0; i < 12; i++) {
+			if (i % 4 == 3) {
+				assertNull(results.get(i).text());
+				assertEquals(ScanResult.UNREADABLE_IMAGE, results.get(i).error());
+			} else {
+				assertEquals("item-" + i, results.get(i).text());
+			}
+		}
+		assertEquals(0, pipeline.reservedBytes());
+	}
+
+	@Test
+	void refusesBytesBeyondTheBudgetSharedByAllBatches() {
+		pipeline.bufferedBytes = 100;
+
+		assertTrue(pipeline.reserve(60));
+		assertFalse(pipeline.reserve(60));
+		pipeline.release(60);
+		assertTrue(pipeline.reserve(60));
+	}
+
+	@Test
+	void readsTheTextBesideASymbolThatDoesNotDecode() throws Exception {
+		readsEveryZoneAs("HUMAN READABLE");
+		BatchItem item = new BatchItem(0, "damaged.png", encode(undecodablePage(), ".png"));
+		pipeline.reserve(item.bytes().length);
+
+		BatchResult result = decode(item);
+		assertEquals(ScanResult.NO_VALID_BARCODE, result.error());
+		assertEquals("HUMAN READABLE\nHUMAN READABLE", result.ocrText());
+	}
+
+	@Test
+	void skipsTheOcrFallbackOnceTheItemsBudgetIsSpent() throws Exception {
+		readsEveryZoneAs("HUMAN READABLE");
+		pipeline.budgetMs = 1;
+		BatchItem item = new BatchItem(0, "damaged.png", encode(undecodablePage(), ".png"));
+		pipeline.reserve(item.bytes().length);
+
+		BatchResult result = decode(item);
+		assertEquals(ScanResult.DEADLINE_EXCEEDED, result.error());
+		assertNull(result.ocrText());
+	}
+
+	private BatchResult decode(BatchItem item) throws InterruptedException {
+		List<BatchResult> results = new ArrayList<>();
+		CountDownLatch done = new CountDownLatch(1);
+		pipeline.submit(List.of(item), results::add, done::countDown);
+		assertTrue(done.await(60, TimeUnit.SECONDS));
+		return results.get(0);
+	}
+
+	/**
+	 * Enables the OCR fallback with an engine that reads {@code text} from every zone.
+	 */
+	private void readsEveryZoneAs(String text) {
+		fixture.enableOcr(() -> new OcrFallback.OcrEngine() {
+			@Override
+			public String read(Mat gray) {
+				return text;
+			}
+
+			@Override
+			public void close() {
+			}
+		});
+	}
+}
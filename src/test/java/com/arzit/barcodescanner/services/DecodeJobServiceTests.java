@@ -0,0 +1,161 @@
+package com.arzit.barcodescanner.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import nu.pattern.OpenCV;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static com.arzit.barcodescanner.services.PDF417Samples.PAYLOAD;
+import static com.arzit.barcodescanner.services.PDF417Samples.encode;
+import static com.arzit.barcodescanner.services.PDF417Samples.pdf417;
+import static org.junit.jupiter.api.Assertions.*;
+
+class DecodeJobServiceTests {
+
+	private ScanFixture fixture;
+	private DecodeJobService jobs;
+
+	@BeforeAll
+	static void loadOpenCV() {
+		OpenCV.loadLocally();
+	}
+
+	@BeforeEach
+	void setUp() {
+		fixture = new ScanFixture();
+	}
+
+	@AfterEach
+	void tearDown() {
+		if (jobs != null) {
+			jobs.stop();
+		}
+		fixture.close();
+	}
+
+	@Test
+	void decodesInTheBackgroundAndCanBePolled() throws Exception {
+		jobs = jobs(fixture.scanService, 2, 4);
+
+		DecodeJobService.JobView submitted = jobs.submit(encode(pdf417(PAYLOAD, 400, 160), ".png"), null, null);
+		DecodeJobService.JobView job = awaitDone(submitted.id());
+		assertEquals(PAYLOAD, job.text());
+
+		// A deadline already passed skips the work entirely
+		DecodeJobService.JobView late = awaitDone(jobs.submit(new byte[]{1}, 0L, null).id());
+		assertEquals(ScanResult.DEADLINE_EXCEEDED, late.error());
+	}
+
+	@Test
+	void refusesJobsBeyondRunningAndQueuedCapacity() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		CountDownLatch started = new CountDownLatch(1);
+		PDF417ScanService blocking = new PDF417ScanService() {
+			@Override
+			public ScanResult scan(byte[] upload, Deadline deadline, String endpoint) {
+				started.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return ScanResult.decoded("done");
+			}
+		};
+		jobs = jobs(blocking, 1, 1);
+
+		String running = jobs.submit(new byte[]{1}, null, null).id();
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		String queued = jobs.submit(new byte[]{1}, null, null).id();
+		assertEquals(DecodeJobService.JobStatus.QUEUED, jobs.get(queued).status());
+
+		JobRejectedException rejected = assertThrows(JobRejectedException.class, () -> jobs.submit(new byte[]{1}, null, null));
+		assertTrue(rejected.getRetryAfterSeconds() >= 1);
+
+		release.countDown();
+		assertEquals("done", awaitDone(running).text());
+		assertEquals("done", awaitDone(queued).text());
+		// Capacity is returned once jobs finish
+		assertNotNull(jobs.submit(new byte[]{1}, null, null));
+	}
+
+	@Test
+	void refusesJobsBeyondTheAdmittedBytesBeforeReadingThem() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		PDF417ScanService blocking = new PDF417ScanService() {
+			@Override
+			public ScanResult scan(byte[] upload, Deadline deadline, String endpoint) {
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return ScanResult.decoded("done");
+			}
+		};
+		jobs = jobs(blocking, 1, 4);
+		jobs.maxBytes = 10;
+		DecodeJobService.Upload unread = () -> fail("read before admission");
+
+		String running = jobs.submit(new byte[6], null, null).id();
+		assertThrows(JobRejectedException.class, () -> jobs.submit(6, unread, null, null));
+		assertThrows(ImageRejectedException.class, () -> jobs.submit(11, unread, null, null));
+
+		release.countDown();
+		assertEquals("done", awaitDone(running).text());
+		// The bytes are returned once the job finishes
+		assertNotNull(jobs.submit(new byte[6], null, null));
+	}
+
+	@Test
+	void reportsTheTextReadBesideASymbolThatDidNotDecode() throws Exception {
+		PDF417ScanService unreadable = new PDF417ScanService() {
+			@Override
+			public ScanResult scan(byte[] upload, Deadline deadline, String endpoint) {
+				return ScanResult.failed(ScanResult.NO_VALID_BARCODE).withOcrText("HUMAN READABLE");
+			}
+		};
+		jobs = jobs(unreadable, 1, 1);
+
+		DecodeJobService.JobView job = awaitDone(jobs.submit(new byte[]{1}, null, null).id());
+		assertEquals(ScanResult.NO_VALID_BARCODE, job.error());
+		assertEquals("HUMAN READABLE", job.ocrText());
+	}
+
+	@Test
+	void acceptsOnlyLoopbackCallbacks() {
+		jobs = jobs(fixture.scanService, 1, 1);
+		assertEquals("localhost", jobs.callbackUri("http://localhost:9000/done").getHost());
+		assertNotNull(jobs.callbackUri("http://127.0.0.1/done"));
+		assertNotNull(jobs.callbackUri("http://[::1]:8080/done"));
+		assertThrows(IllegalArgumentException.class, () -> jobs.callbackUri("http://192.0.2.1/done"));
+		// Host names other than localhost are refused without resolving them, as they may rebind
+		assertThrows(IllegalArgumentException.class, () -> jobs.callbackUri("http://loopback.example/done"));
+		assertThrows(IllegalArgumentException.class, () -> jobs.callbackUri("file:///etc/passwd"));
+	}
+
+	private static DecodeJobService jobs(PDF417ScanService scanService, int concurrency, int queueCapacity) {
+		DecodeJobService jobs = new DecodeJobService();
+		jobs.pdf417ScanService = scanService;
+		jobs.objectMapper = new ObjectMapper();
+		jobs.concurrency = concurrency;
+		jobs.queueCapacity = queueCapacity;
+		jobs.start();
+		return jobs;
+	}
+
+	private DecodeJobService.JobView awaitDone(String id) throws InterruptedException {
+		long until = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		DecodeJobService.JobView job = jobs.get(id);
+		while (job.status() != DecodeJobService.JobStatus.DONE && System.nanoTime() < until) {
+			Thread.sleep(10);
+			job = jobs.get(id);
+		}
+		return job;
+	}
+}
@@ -0,0 +1,96 @@
+package com.arzit.barcodescanner.services;
+
+import nu.pattern.OpenCV;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.imgcodecs.Imgcodecs;
+
+import static com.arzit.barcodescanner.services.PDF417Samples.PAYLOAD;
+import static com.arzit.barcodescanner.services.PDF417Samples.encode;
+import static com.arzit.barcodescanner.services.PDF417Samples.pdf417;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class DecodeResultCacheTests {
+
+	@BeforeAll
+	static void loadOpenCV() {
+		OpenCV.loadLocally();
+	}
+
+	@Test
+	void evictsLeastRecentlyUsedEntry() {
+		DecodeResultCache cache = new DecodeResultCache();
+		cache.maxEntries = 2;
+		cache.put("a", ScanResult.decoded("A"));
+		cache.put("b", ScanResult.failed(ScanResult.NO_BARCODE));
+		cache.get("a");
+		cache.put("c", ScanResult.decoded("C"));
+
+		assertEquals("A", cache.get("a").text());
+		assertNull(cache.get("b"));
+		assertEquals(ScanResult.decoded("C"), cache.get("c"));
+		assertEquals(new DecodeResultCache.CacheStats(3, 1, 0, 0, 1, 2, cache.stats().bytes()), cache.stats());
+	}
+
+	@Test
+	void expiresEntriesAfterTtl() {
+		DecodeResultCache cache = new DecodeResultCache();
+		cache.ttlSeconds = -1;
+		cache.put("a", ScanResult.decoded("A"));
+
+		assertNull(cache.get("a"));
+		assertEquals(0, cache.stats().entries());
+		assertEquals(0, cache.stats().bytes());
+	}
+
+	@Test
+	void boundsMemory() {
+		DecodeResultCache cache = new DecodeResultCache();
+		cache.maxBytes = 2000;
+		for (int i = 0; i < 50; i++) {
+			cache.put("key-" + i, ScanResult.decoded(PAYLOAD));
+		}
+
+		assertEquals(true, cache.stats().bytes() <= 2000);
+		assertEquals(50 - cache.stats().entries(), cache.stats().evictions());
+	}
+
+	@Test
+	void contentKeyDependsOnBytesOnly() {
+		DecodeResultCache cache = new DecodeResultCache();
+
+		assertEquals(cache.contentKey(new byte[]{1, 2, 3}), cache.contentKey(new byte[]{1, 2, 3}));
+		assertNotEquals(cache.contentKey(new byte[]{1, 2, 3}), cache.contentKey(new byte[]{1, 2, 4}));
+	}
+
+	@Test
+	void nearDuplicateFrameReusesDecode() throws Exception {
+		DecodeResultCache cache = new DecodeResultCache();
+		Mat original = pdf417(PAYLOAD, 800, 320);
+		Mat recompressed = Imgcodecs.imdecode(new MatOfByte(encode(original, ".jpg")), Imgcodecs.IMREAD_GRAYSCALE);
+		Mat other = pdf417("a different symbol of similar size", 800, 320);
+
+		cache.putSimilar(cache.perceptualKey(original), ScanResult.decoded(PAYLOAD));
+
+		assertEquals(PAYLOAD, cache.getSimilar(cache.perceptualKey(recompressed)).text());
+		assertNull(cache.getSimilar(cache.perceptualKey(other)));
+		// Counted apart from content-key lookups, which this test made none of
+		assertEquals(1, cache.stats().similarHits());
+		assertEquals(1, cache.stats().similarMisses());
+		assertEquals(0, cache.stats().misses());
+	}
+
+	@Test
+	void failuresAreNotSharedWithNearDuplicates() throws Exception {
+		DecodeResultCache cache = new DecodeResultCache();
+		DecodeResultCache.PerceptualKey key = cache.perceptualKey(pdf417(PAYLOAD, 800, 320));
+
+		cache.putSimilar(key, ScanResult.failed(ScanResult.NO_VALID_BARCODE));
+
+		assertNull(cache.getSimilar(key));
+	}
+}
@@ -0,0 +1,106 @@
+package com.arzit.barcodescanner.services;
+
+import com.arzit.barcodescanner.metrics.ScanMetrics;
+
+import nu.pattern.OpenCV;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.core.Scalar;
+
+import java.time.Duration;
+import java.util.List;
+
+import static com.arzit.barcodescanner.services.PDF417Samples.PAYLOAD;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DecodeStrategySchedulerTests {
+
+	private ScanFixture fixture;
+	private DecodeStrategyScheduler scheduler;
+
+	@BeforeAll
+	static void loadOpenCV() {
+		OpenCV.loadLocally();
+	}
+
+	@BeforeEach
+	void setUp() {
+		fixture = new ScanFixture();
+		scheduler = fixture.scheduler;
+	}
+
+	@AfterEach
+	void tearDown() {
+		fixture.close();
+	}
+
+	@Test
+	void startsInDeclarationOrder() {
+		assertEquals(List.of(ScanMetrics.FULL_FRAME, ScanMetrics.CANDIDATE, ScanMetrics.DESKEWED,
+				ScanMetrics.INVERTED, ScanMetrics.GLOBAL_HISTOGRAM), scheduler.scheduleNames());
+	}
+
+	@Test
+	void movesTheStrategyThatKeepsWinningToTheFront() {
+		scheduler.smoothing = 0.5;
+		scheduler.use(List.of(
+				DecodeStrategy.of("loser", context -> null),
+				DecodeStrategy.of("winner", context -> {
+					try {
+						Thread.sleep(5);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+					return PAYLOAD;
+				})));
+		Mat image = new Mat(10, 10, CvType.CV_8UC1, new Scalar(255));
+
+		for (int i = 0; i < 8; i++) {
+			assertEquals(PAYLOAD, scheduler.decode(image, Deadline.none()).text());
+		}
+		// Slower, but the only one that ever succeeds
+		assertEquals(List.of("winner", "loser"), scheduler.scheduleNames());
+		assertEquals(8, scheduler.stats().get(0).attempts());
+
+		scheduler.adaptive = false;
+		assertEquals(List.of("loser", "winner"), scheduler.scheduleNames());
+	}
+
+	@Test
+	void stopsAfterTheFirstStrategyOnceTheBudgetIsSpent() {
+		Mat blank = new Mat(200, 200, CvType.CV_8UC1, new Scalar(255));
+		ScanResult result = scheduler.decode(blank, Deadline.after(Duration.ZERO));
+		assertEquals(ScanResult.DEADLINE_EXCEEDED, result.error());
+		// Only the full frame ran, and a failure past the deadline is not held against it
+		assertEquals(0, scheduler.stats().stream().mapToLong(DecodeStrategyScheduler.StrategyStats::attempts).sum());
+	}
+
+	@Test
+	void keepsLocalisationOutOfTheCostOfTheStrategyThatTriggersIt() {
+		scheduler.barcodeLocator = new BarcodeLocator() {
+			@Override
+			public List<Mat> cropImageBarcode(Mat inputImage, List<Rect> symbols) {
+				try {
+					Thread.sleep(100);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return List.of();
+			}
+		};
+		scheduler.use(List.of(DecodeStrategy.of("locating", context -> context.candidates().isEmpty() ? null : PAYLOAD)));
+		Mat image = new Mat(10, 10, CvType.CV_8UC1, new Scalar(255));
+
+		scheduler.decode(image, Deadline.none());
+
+		DecodeStrategyScheduler.StrategyStats stats = scheduler.stats().get(0);
+		assertEquals(1, stats.attempts());
+		assertTrue(stats.meanCostMs() < 50, stats.meanCostMs() + " ms");
+	}
+}
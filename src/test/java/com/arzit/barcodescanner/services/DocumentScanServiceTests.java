@@ -0,0 +1,164 @@
+package com.arzit.barcodescanner.services;
+
+import nu.pattern.OpenCV;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.graphics.image.LosslessFactory;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.core.Scalar;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+
+import static com.arzit.barcodescanner.services.PDF417Samples.PAYLOAD;
+import static com.arzit.barcodescanner.services.PDF417Samples.pdf417;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DocumentScanServiceTests {
+
+	private ScanFixture fixture;
+	private DocumentScanService service;
+
+	@BeforeAll
+	static void loadOpenCV() {
+		OpenCV.loadLocally();
+	}
+
+	@BeforeEach
+	void setUp() {
+		fixture = new ScanFixture();
+		service = new DocumentScanService();
+		service.pdf417ScanService = fixture.scanService;
+		service.scanMetrics = fixture.metrics;
+		service.threads = 1;
+		service.start();
+	}
+
+	@AfterEach
+	void tearDown() {
+		service.stop();
+		fixture.close();
+	}
+
+	@Test
+	void reportsEveryPageOfAMultiPageTiff() throws Exception {
+		byte[] tiff = tiff(blankPage(), page("first"), page("second"));
+
+		DocumentScanService.DocumentResult result = service.scan(tiff, 0);
+
+		assertEquals(3, result.pages());
+		assertEquals(2, result.decoded());
+		assertFalse(result.stoppedEarly());
+		List<DocumentScanService.PageResult> pages = result.results();
+		assertEquals(List.of(1, 2, 3), pages.stream().map(DocumentScanService.PageResult::page).toList());
+		assertNull(pages.get(0).text());
+		assertEquals("first", pages.get(1).text());
+		assertEquals("second", pages.get(2).text());
+	}
+
+	@Test
+	void stopsRasterizingOnceEnoughBarcodesAreFound() throws Exception {
+		byte[] tiff = tiff(page("first"), page("second"), page("third"), page("fourth"));
+
+		DocumentScanService.DocumentResult result = service.scan(tiff, 1);
+
+		assertTrue(result.stoppedEarly());
+		assertEquals(1, result.decoded());
+		assertEquals(List.of(1), result.results().stream().map(DocumentScanService.PageResult::page).toList());
+	}
+
+	@Test
+	void recordsAFailedPageScanAsThatPagesError() throws Exception {
+		PDF417ScanService scanService = service.pdf417ScanService;
+		service.pdf417ScanService = new PDF417ScanService() {
+			@Override
+			public ScanResult scan(Mat inputImage) {
+				if (Core.mean(inputImage).val[0] == 255) {
+					throw new IllegalStateException("blank page");
+				}
+				return scanService.scan(inputImage);
+			}
+		};
+		byte[] tiff = tiff(page("first"), blankPage(), page("third"));
+
+		DocumentScanService.DocumentResult result = service.scan(tiff, 0);
+
+		assertEquals(2, result.decoded());
+		List<DocumentScanService.PageResult> pages = result.results();
+		assertEquals("first", pages.get(0).text());
+		assertEquals("Error processing the image: blank page", pages.get(1).error());
+		assertEquals("third", pages.get(2).text());
+	}
+
+	@Test
+	void rendersPdfPages() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (PDDocument document = new PDDocument()) {
+			PDPage page = new PDPage(PDRectangle.A6);
+			document.addPage(page);
+			PDImageXObject symbol = LosslessFactory.createFromImage(document, toImage(pdf417(PAYLOAD, 600, 240)));
+			try (PDPageContentStream content = new PDPageContentStream(document, page)) {
+				content.drawImage(symbol, 20, 150, 250, 100);
+			}
+			document.save(out);
+		}
+
+		DocumentScanService.DocumentResult result = service.scan(out.toByteArray(), 0);
+
+		assertEquals(1, result.pages());
+		assertEquals(PAYLOAD, result.results().get(0).text());
+	}
+
+	private static Mat blankPage() {
+		return new Mat(600, 800, CvType.CV_8UC1, new Scalar(255));
+	}
+
+	private static Mat page(String text) throws Exception {
+		Mat page = blankPage();
+		Mat symbol = pdf417(text, 400, 160);
+		symbol.copyTo(page.submat(new Rect(200, 200, symbol.cols(), symbol.rows())));
+		return page;
+	}
+
+	private static byte[] tiff(Mat... pages) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ImageWriter writer = ImageIO.getImageWritersByFormatName("tiff").next();
+		try (ImageOutputStream output = ImageIO.createImageOutputStream(out)) {
+			writer.setOutput(output);
+			writer.prepareWriteSequence(null);
+			for (Mat page : pages) {
+				writer.writeToSequence(new IIOImage(toImage(page), null, null), null);
+			}
+			writer.endWriteSequence();
+		} finally {
+			writer.dispose();
+		}
+		return out.toByteArray();
+	}
+
+	private static BufferedImage toImage(Mat gray) {
+		BufferedImage image = new BufferedImage(gray.cols(), gray.rows(), BufferedImage.TYPE_BYTE_GRAY);
+		byte[] pixels = new byte[gray.cols() * gray.rows()];
+		gray.get(0, 0, pixels);
+		image.getRaster().setDataElements(0, 0, gray.cols(), gray.rows(), pixels);
+		return image;
+	}
+}
@@ -0,0 +1,141 @@
+package com.arzit.barcodescanner.services;
+
+import nu.pattern.OpenCV;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.core.Scalar;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static com.arzit.barcodescanner.services.PDF417Samples.PAYLOAD;
+import static com.arzit.barcodescanner.services.PDF417Samples.encode;
+import static com.arzit.barcodescanner.services.PDF417Samples.pdf417;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class FrameStreamServiceTests {
+
+	private ScanFixture fixture;
+	private FrameStreamService service;
+
+	@BeforeAll
+	static void loadOpenCV() {
+		OpenCV.loadLocally();
+	}
+
+	@BeforeEach
+	void setUp() {
+		fixture = new ScanFixture();
+		fixture.ingestion.maxBytes = 1024 * 1024;
+		fixture.ingestion.maxPixels = 10_000_000;
+		service = new FrameStreamService();
+		service.imageIngestionService = fixture.ingestion;
+		service.barcodeLocator = fixture.locator;
+		service.pdf417Decoder = fixture.decoder;
+		service.scanMetrics = fixture.metrics;
+		service.threads = 1;
+		service.maxSessions = 4;
+		service.start();
+	}
+
+	@AfterEach
+	void tearDown() {
+		service.stop();
+		fixture.close();
+	}
+
+	@Test
+	void tracksAMovingSymbolAndReportsItOnce() throws Exception {
+		List<FrameStreamService.StreamEvent> events = new CopyOnWriteArrayList<>();
+		FrameStreamService.Session session = service.open(events::add);
+		for (int frame = 0; frame < 5; frame++) {
+			session.offer(frame(40 + frame * 15, 120));
+			session.awaitIdle();
+		}
+
+		FrameStreamService.StreamSummary summary = session.finish(null);
+
+		assertEquals(1, events.size());
+		assertEquals(PAYLOAD, events.get(0).text());
+		assertEquals(1, events.get(0).frame());
+		assertEquals(5, summary.processed());
+		assertEquals(0, summary.dropped());
+		// Only the first frame is localised, the rest decode the tracked box
+		assertEquals(1, summary.keyframes());
+		assertEquals(1, summary.symbols());
+		assertNull(summary.error());
+	}
+
+	@Test
+	void keepsOnlyTheNewestFrameWhileDecoding() throws Exception {
+		CountDownLatch reported = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		FrameStreamService.Session session = service.open(event -> {
+			reported.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		byte[] frame = frame(40, 120);
+		session.offer(frame);
+		reported.await(10, TimeUnit.SECONDS);
+		for (int i = 0; i < 3; i++) {
+			session.offer(frame);
+		}
+		release.countDown();
+
+		FrameStreamService.StreamSummary summary = session.finish(null);
+
+		assertEquals(4, summary.frames());
+		assertEquals(2, summary.processed());
+		assertEquals(2, summary.dropped());
+	}
+
+	@Test
+	void splitsAMultipartMjpegBody() throws Exception {
+		byte[] first = frame(40, 120);
+		byte[] second = frame(80, 120);
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		for (byte[] jpeg : List.of(first, second)) {
+			body.write(("--frame\r\nContent-Type: image/jpeg\r\nContent-Length: " + jpeg.length + "\r\n\r\n")
+					.getBytes(StandardCharsets.US_ASCII));
+			body.write(jpeg);
+			body.write("\r\n".getBytes(StandardCharsets.US_ASCII));
+		}
+		// A frame cut off by the end of the stream is ignored
+		body.write(first, 0, first.length / 2);
+
+		MjpegFrameReader reader = new MjpegFrameReader(new ByteArrayInputStream(body.toByteArray()), 1024 * 1024);
+
+		assertArrayEquals(first, reader.next());
+		assertArrayEquals(second, reader.next());
+		assertNull(reader.next());
+	}
+
+	/**
+	 * A 640x480 JPEG frame with the symbol at {@code (x, y)}.
+	 */
+	private static byte[] frame(int x, int y) throws Exception {
+		Mat canvas = new Mat(480, 640, CvType.CV_8UC1, new Scalar(255));
+		Mat symbol = pdf417(PAYLOAD, 400, 150);
+		symbol.copyTo(canvas.submat(new Rect(x, y, symbol.cols(), symbol.rows())));
+		byte[] jpeg = encode(canvas, ".jpg");
+		symbol.release();
+		canvas.release();
+		return jpeg;
+	}
+}
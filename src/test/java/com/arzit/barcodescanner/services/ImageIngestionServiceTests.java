@@ -0,0 +1,300 @@
+package com.arzit.barcodescanner.services;
+
+import nu.pattern.OpenCV;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.spi.IIORegistry;
+import javax.imageio.spi.ImageReaderSpi;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Locale;
+
+import static com.arzit.barcodescanner.services.PDF417Samples.PAYLOAD;
+import static com.arzit.barcodescanner.services.PDF417Samples.encode;
+import static com.arzit.barcodescanner.services.PDF417Samples.pdf417;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ImageIngestionServiceTests {
+
+	private ImageIngestionService service;
+
+	@BeforeAll
+	static void loadOpenCV() {
+		OpenCV.loadLocally();
+	}
+
+	@BeforeEach
+	void setUp() {
+		service = new ImageIngestionService();
+		service.maxBytes = 1024 * 1024;
+		service.maxPixels = 1_000_000;
+	}
+
+	@Test
+	void decodesToGrayscaleInMemory() throws Exception {
+		Mat source = pdf417(PAYLOAD, 400, 160);
+		Mat decoded = service.decode(encode(source, ".png"));
+
+		assertEquals(CvType.CV_8UC1, decoded.type());
+		assertEquals(source.size(), decoded.size());
+	}
+
+	@Test
+	void reusesStagingBufferAcrossDifferentSizes() throws Exception {
+		Mat large = service.decode(encode(pdf417(PAYLOAD, 800, 320), ".png"));
+		Mat small = service.decode(encode(pdf417("small", 200, 80), ".jpg"));
+
+		assertTrue(large.cols() > small.cols());
+		assertEquals(CvType.CV_8UC1, small.type());
+	}
+
+	@Test
+	void keepsStagingBuffersBoundedAcrossShortLivedThreads() throws Exception {
+		service.stagingPoolSize = 1;
+		byte[] png = encode(pdf417(PAYLOAD, 400, 160), ".png");
+
+		for (int i = 0; i < 8; i++) {
+			Thread thread = new Thread(() -> service.decode(png).release());
+			thread.start();
+			thread.join();
+		}
+
+		assertEquals(4 * 1024 * 1024, service.stagingBytes());
+	}
+
+	@Test
+	void rejectsTooManyPixelsBeforeDecoding() throws Exception {
+		service.maxPixels = 1000;
+		byte[] png = encode(pdf417(PAYLOAD, 400, 160), ".png");
+
+		assertThrows(ImageRejectedException.class, () -> service.decode(png));
+	}
+
+	@Test
+	void readsThePixelCountOfHeadersImageIoCannotRead() throws Exception {
+		byte[] pgm = encode(pdf417(PAYLOAD, 400, 160), ".pgm");
+		assertEquals(CvType.CV_8UC1, service.decode(pgm).type());
+
+		byte[] pgmBomb = header("P5\n# declared only\n20000 20000\n255\n", 64);
+		assertThrows(ImageRejectedException.class, () -> service.decode(pgmBomb));
+
+		// Extended WebP whose canvas is 2000x2000
+		byte[] webpBomb = header("RIFF\0\0\0\0WEBPVP8X\12\0\0\0\0\0\0\0\u00CF\7\0\u00CF\7\0", 64);
+		assertEquals(4_000_000, ImageIngestionService.headerPixelCount(webpBomb));
+		assertThrows(ImageRejectedException.class, () -> service.decode(webpBomb));
+	}
+
+	@Test
+	void refusesToDecodeImagesWhoseDimensionsCannotBeRead() {
+		// A JPEG 2000 signature: OpenCV would decode it, but its size is unknown
+		byte[] jp2 = header("\0\0\0\fjP  \r\n\u0087\n", 64);
+
+		assertEquals(-1, ImageIngestionService.headerPixelCount(jp2));
+		assertTrue(service.decode(jp2).empty());
+	}
+
+	@Test
+	void routesImagesOverTheInMemoryLimitsToTiling() throws Exception {
+		byte[] png = encode(pdf417(PAYLOAD, 400, 160), ".png");
+		assertFalse(service.requiresTiling(png));
+
+		service.maxPixels = 1000;
+		assertTrue(service.requiresTiling(png));
+
+		service.largeMaxPixels = 2000;
+		assertThrows(ImageRejectedException.class, () -> service.requiresTiling(png));
+
+		service.largeMaxPixels = 0;
+		assertFalse(service.requiresTiling(png));
+	}
+
+	@Test
+	void rejectsTooManyBytes() throws Exception {
+		service.maxBytes = 100;
+		byte[] png = encode(pdf417(PAYLOAD, 400, 160), ".png");
+
+		assertThrows(ImageRejectedException.class, () -> service.decode(png));
+	}
+
+	@Test
+	void readsRawFramesWithRowPadding() throws Exception {
+		Mat source = pdf417(PAYLOAD, 400, 160);
+		int stride = source.cols() + 13;
+		byte[] body = new byte[stride * (source.rows() - 1) + source.cols()];
+		byte[] row = new byte[source.cols()];
+		for (int y = 0; y < source.rows(); y++) {
+			source.get(y, 0, row);
+			System.arraycopy(row, 0, body, y * stride, row.length);
+		}
+
+		Mat frame = service.readRaw(new ByteArrayInputStream(body), body.length, source.cols(), source.rows(), stride);
+
+		assertEquals(source.size(), frame.size());
+		assertEquals(0, Core.norm(source, frame, Core.NORM_INF));
+	}
+
+	@Test
+	void readsRawFramesWithAStrideWiderThanAChunk() throws Exception {
+		Mat source = pdf417(PAYLOAD, 400, 160);
+		int stride = 100_000;
+		service.maxBytes = (long) stride * source.rows();
+		byte[] body = new byte[stride * (source.rows() - 1) + source.cols()];
+		byte[] row = new byte[source.cols()];
+		for (int y = 0; y < source.rows(); y++) {
+			source.get(y, 0, row);
+			System.arraycopy(row, 0, body, y * stride, row.length);
+		}
+
+		Mat frame = service.readRaw(new ByteArrayInputStream(body), -1, source.cols(), source.rows(), stride);
+
+		assertEquals(0, Core.norm(source, frame, Core.NORM_INF));
+	}
+
+	@Test
+	void rejectsRawFramesWhoseStrideExceedsTheByteLimit() {
+		byte[] body = new byte[10];
+
+		assertThrows(ImageRejectedException.class,
+				() -> service.readRaw(new ByteArrayInputStream(body), -1, 10, 1, Integer.MAX_VALUE));
+	}
+
+	@Test
+	void rejectsRawFramesThatDoNotMatchTheirGeometry() {
+		byte[] body = new byte[100 * 50 - 1];
+
+		assertThrows(IllegalArgumentException.class,
+				() -> service.readRaw(new ByteArrayInputStream(body), body.length, 100, 50, 100));
+		assertThrows(IllegalArgumentException.class,
+				() -> service.readRaw(new ByteArrayInputStream(body), -1, 100, 50, 100));
+		assertThrows(IllegalArgumentException.class,
+				() -> service.readRaw(new ByteArrayInputStream(body), body.length, 100, 50, 99));
+		assertThrows(ImageRejectedException.class,
+				() -> service.readRaw(new ByteArrayInputStream(body), body.length, 2000, 1000, 2000));
+	}
+
+	@Test
+	void treatsAHeaderAnImageIoPluginFailsOnAsUnreadable() throws Exception {
+		ImageReaderSpi failing = new FailingReaderSpi();
+		IIORegistry.getDefaultInstance().registerServiceProvider(failing, ImageReaderSpi.class);
+		try {
+			byte[] crafted = header("CRAFTED", 64);
+
+			assertEquals(-1, ImageIngestionService.headerPixelCount(crafted));
+			assertFalse(service.requiresTiling(crafted));
+			assertTrue(service.decode(crafted).empty());
+		} finally {
+			IIORegistry.getDefaultInstance().deregisterServiceProvider(failing, ImageReaderSpi.class);
+		}
+	}
+
+	@Test
+	void corruptImageDecodesToEmptyMat() {
+		assertTrue(service.decode(new byte[]{1, 2, 3, 4, 5}).empty());
+	}
+
+	/**
+	 * Claims uploads starting with "CRAFTED" and throws on their dimensions, as ImageIO plugins
+	 * do on malformed headers.
+	 */
+	private static final class FailingReaderSpi extends ImageReaderSpi {
+
+		FailingReaderSpi() {
+			super("tests", "1", new String[]{"crafted"}, null, null, FailingReader.class.getName(),
+					new Class<?>[]{ImageInputStream.class}, null, false, null, null, null, null,
+					false, null, null, null, null);
+		}
+
+		@Override
+		public boolean canDecodeInput(Object source) throws IOException {
+			ImageInputStream input = (ImageInputStream) source;
+			byte[] magic = new byte[7];
+			input.mark();
+			try {
+				input.readFully(magic);
+			} catch (EOFException e) {
+				return false;
+			} finally {
+				input.reset();
+			}
+			return "CRAFTED".equals(new String(magic, StandardCharsets.ISO_8859_1));
+		}
+
+		@Override
+		public ImageReader createReaderInstance(Object extension) {
+			return new FailingReader(this);
+		}
+
+		@Override
+		public String getDescription(Locale locale) {
+			return "Fails on every header";
+		}
+	}
+
+	private static final class FailingReader extends ImageReader {
+
+		FailingReader(ImageReaderSpi spi) {
+			super(spi);
+		}
+
+		@Override
+		public int getNumImages(boolean allowSearch) {
+			return 1;
+		}
+
+		@Override
+		public int getWidth(int imageIndex) {
+			throw new IllegalArgumentException("crafted width");
+		}
+
+		@Override
+		public int getHeight(int imageIndex) {
+			throw new IllegalArgumentException("crafted height");
+		}
+
+		@Override
+		public Iterator<ImageTypeSpecifier> getImageTypes(int imageIndex) {
+			return Collections.emptyIterator();
+		}
+
+		@Override
+		public IIOMetadata getStreamMetadata() {
+			return null;
+		}
+
+		@Override
+		public IIOMetadata getImageMetadata(int imageIndex) {
+			return null;
+		}
+
+		@Override
+		public BufferedImage read(int imageIndex, ImageReadParam param) {
+			throw new IllegalArgumentException("crafted image");
+		}
+	}
+
+	/**
+	 * {@code header} as ISO-8859-1 bytes, padded with zeros to {@code length}.
+	 */
+	private static byte[] header(String header, int length) {
+		return Arrays.copyOf(header.getBytes(StandardCharsets.ISO_8859_1), length);
+	}
+}
@@ -0,0 +1,136 @@
+package com.arzit.barcodescanner.services;
+
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.pdf417.PDF417Reader;
+import nu.pattern.OpenCV;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static com.arzit.barcodescanner.services.PDF417Samples.PAYLOAD;
+import static com.arzit.barcodescanner.services.PDF417Samples.onPage;
+import static com.arzit.barcodescanner.services.PDF417Samples.pdf417;
+import static com.arzit.barcodescanner.services.PDF417Samples.skewed;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MatBinarizerTests {
+
+	@BeforeAll
+	static void loadOpenCV() {
+		OpenCV.loadLocally();
+	}
+
+	@Test
+	void decodesEverySampleTheHybridBinarizerDecodes() throws Exception {
+		Map<String, Mat> corpus = corpus();
+		for (Map.Entry<String, Mat> sample : corpus.entrySet()) {
+			String hybrid = decode(sample.getValue(), Binarization.HYBRID, false);
+			assertEquals(PAYLOAD, hybrid, "hybrid on " + sample.getKey());
+			assertEquals(hybrid, decode(sample.getValue(), Binarization.ADAPTIVE, false), "adaptive on " + sample.getKey());
+			assertEquals(hybrid, decode(sample.getValue(), Binarization.INTEGRAL, false), "integral on " + sample.getKey());
+		}
+		corpus.values().forEach(Mat::release);
+	}
+
+	@Test
+	void integralSumsMatchOpenCvAwayFromTheBorder() throws Exception {
+		Mat image = noisy(captured(pdf417(PAYLOAD, 600, 200)), 12);
+		int window = MatBinarizer.window(image.cols(), image.rows());
+		Mat reference = new Mat();
+		Imgproc.adaptiveThreshold(image, reference, 255, Imgproc.ADAPTIVE_THRESH_MEAN_C, Imgproc.THRESH_BINARY_INV,
+				window, MatBinarizer.OFFSET);
+		BitMatrix integral = Binarization.INTEGRAL.create(new MatLuminanceSource(image)).getBlackMatrix();
+
+		int border = window / 2;
+		long compared = 0;
+		long differing = 0;
+		for (int y = border; y < image.rows() - border; y++) {
+			for (int x = border; x < image.cols() - border; x++) {
+				compared++;
+				if ((reference.get(y, x)[0] != 0) != integral.get(x, y)) {
+					differing++;
+				}
+			}
+		}
+		// OpenCV rounds the mean to whole gray levels, which flips pixels right at the threshold
+		assertTrue(differing < compared / 100, differing + " of " + compared + " pixels differ");
+		image.release();
+		reference.release();
+	}
+
+	@Test
+	void readsSourcesThatAreNotBackedByAMat() throws Exception {
+		Mat page = captured(pdf417(PAYLOAD, 600, 200));
+		Mat negative = new Mat();
+		Core.bitwise_not(page, negative);
+
+		assertEquals(PAYLOAD, decode(negative, Binarization.INTEGRAL, true));
+		assertEquals(PAYLOAD, decode(negative, Binarization.ADAPTIVE, true));
+		page.release();
+		negative.release();
+	}
+
+	private static String decode(Mat image, Binarization binarization, boolean inverted) {
+		LuminanceSource source = new MatLuminanceSource(image);
+		if (inverted) {
+			source = source.invert();
+		}
+		try {
+			return new PDF417Reader().decode(new BinaryBitmap(binarization.create(source))).getText();
+		} catch (Exception e) {
+			return null;
+		}
+	}
+
+	private static Map<String, Mat> corpus() throws Exception {
+		Map<String, Mat> corpus = new LinkedHashMap<>();
+		corpus.put("clean", captured(pdf417(PAYLOAD, 600, 200)));
+		corpus.put("skewed", skewed(pdf417(PAYLOAD, 600, 200), 3));
+		corpus.put("noisy", noisy(captured(pdf417(PAYLOAD, 600, 200)), 12));
+		// Bars far wider than the minimum window
+		corpus.put("large modules", captured(pdf417(PAYLOAD, 2400, 800)));
+
+		Mat faint = captured(pdf417(PAYLOAD, 600, 200));
+		faint.convertTo(faint, -1, 60 / 255.0, 120);
+		corpus.put("low contrast", faint);
+
+		// Brightness falling off across the page, as under a single lamp
+		Mat shaded = captured(pdf417(PAYLOAD, 600, 200));
+		Mat ramp = new Mat(shaded.size(), CvType.CV_8UC1);
+		for (int x = 0; x < ramp.cols(); x++) {
+			ramp.col(x).setTo(new Scalar(x * 100.0 / ramp.cols()));
+		}
+		Core.subtract(shaded, ramp, shaded);
+		ramp.release();
+		corpus.put("shaded", shaded);
+		return corpus;
+	}
+
+	/**
+	 * The symbol softened like a capture, centred on a white page twice its size.
+	 */
+	private static Mat captured(Mat symbol) {
+		Mat page = onPage(symbol, 2, 2);
+		Imgproc.GaussianBlur(page, page, new Size(3, 3), 0);
+		return page;
+	}
+
+	private static Mat noisy(Mat image, double sigma) {
+		Mat noise = new Mat(image.size(), CvType.CV_8UC1);
+		Core.randn(noise, 128, sigma);
+		Core.addWeighted(image, 1, noise, 1, -128, image);
+		noise.release();
+		return image;
+	}
+}
@@ -0,0 +1,100 @@
+package com.arzit.barcodescanner.services;
+
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.Result;
+import com.google.zxing.common.HybridBinarizer;
+import com.google.zxing.pdf417.PDF417Reader;
+import nu.pattern.OpenCV;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+
+import static com.arzit.barcodescanner.services.PDF417Samples.PAYLOAD;
+import static com.arzit.barcodescanner.services.PDF417Samples.pdf417;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MatLuminanceSourceTests {
+
+	@BeforeAll
+	static void loadOpenCV() {
+		OpenCV.loadLocally();
+	}
+
+	private static Result decode(Mat mat) throws Exception {
+		return new PDF417Reader().decode(new BinaryBitmap(new HybridBinarizer(new MatLuminanceSource(mat))));
+	}
+
+	@Test
+	void decodesGrayscaleMat() throws Exception {
+		assertEquals(PAYLOAD, decode(pdf417(PAYLOAD, 400, 160)).getText());
+	}
+
+	@Test
+	void decodesColourMat() throws Exception {
+		Mat bgr = new Mat();
+		Imgproc.cvtColor(pdf417(PAYLOAD, 400, 160), bgr, Imgproc.COLOR_GRAY2BGR);
+		assertEquals(PAYLOAD, decode(bgr).getText());
+	}
+
+	@Test
+	void decodesRoiSubmatWithoutCopy() throws Exception {
+		Mat barcode = pdf417(PAYLOAD, 400, 160);
+		Mat canvas = new Mat(barcode.rows() + 200, barcode.cols() + 300, CvType.CV_8UC1, new Scalar(255));
+		Mat roi = canvas.submat(new Rect(150, 100, barcode.cols(), barcode.rows()));
+		barcode.copyTo(roi);
+
+		assertEquals(PAYLOAD, decode(roi).getText());
+	}
+
+	@Test
+	void cropAndRowsMatchMatrix() throws Exception {
+		Mat barcode = pdf417(PAYLOAD, 400, 160);
+		MatLuminanceSource source = new MatLuminanceSource(barcode);
+		byte[] matrix = source.getMatrix();
+		byte[] row = source.getRow(7, null);
+		byte[] expected = new byte[source.getWidth()];
+		System.arraycopy(matrix, 7 * source.getWidth(), expected, 0, expected.length);
+		assertArrayEquals(expected, row);
+
+		byte[] cropped = source.crop(10, 7, 20, 1).getRow(0, null);
+		byte[] expectedCrop = new byte[20];
+		System.arraycopy(matrix, 7 * source.getWidth() + 10, expectedCrop, 0, 20);
+		assertArrayEquals(expectedCrop, cropped);
+	}
+
+	@Test
+	void readsRowsOfARoiBeforeTheMatrixIsCopied() throws Exception {
+		Mat barcode = pdf417(PAYLOAD, 400, 160);
+		Mat canvas = new Mat(barcode.rows() + 20, barcode.cols() + 30, CvType.CV_8UC1, new Scalar(255));
+		Mat roi = canvas.submat(new Rect(15, 10, barcode.cols(), barcode.rows()));
+		barcode.copyTo(roi);
+		MatLuminanceSource source = new MatLuminanceSource(roi);
+		byte[] expected = new byte[barcode.cols()];
+
+		for (int y : new int[]{0, 7, barcode.rows() - 1}) {
+			barcode.get(y, 0, expected);
+			assertArrayEquals(expected, source.getRow(y, null));
+		}
+	}
+
+	@Test
+	void releasesTheMatsItCreatedWhenClosed() throws Exception {
+		Mat bgr = new Mat();
+		Imgproc.cvtColor(pdf417(PAYLOAD, 400, 160), bgr, Imgproc.COLOR_GRAY2BGR);
+		MatLuminanceSource source = new MatLuminanceSource(bgr);
+		MatLuminanceSource rotated = (MatLuminanceSource) source.crop(10, 10, 100, 50).rotateCounterClockwise();
+		assertEquals(50, rotated.getWidth());
+
+		source.close();
+		assertTrue(source.gray().empty());
+		assertTrue(rotated.gray().empty());
+		assertFalse(bgr.empty());
+	}
+}
@@ -0,0 +1,51 @@
+package com.arzit.barcodescanner.services;
+
+import nu.pattern.OpenCV;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MatScopeTests {
+
+	@BeforeAll
+	static void loadOpenCV() {
+		OpenCV.loadLocally();
+	}
+
+	@Test
+	void closeReleasesTrackedMatsAndForgetsTheScope() {
+		Mat image;
+		Mat view;
+		try (MatScope scope = MatScope.open()) {
+			image = scope.track(new Mat(100, 200, CvType.CV_8UC1));
+			view = scope.track(image.submat(10, 20, 10, 20));
+			// Views share the parent's data and are not counted twice
+			assertEquals(100 * 200, scope.bytes());
+			assertTrue(MatScope.liveBytes() >= 100 * 200);
+		}
+		assertTrue(image.empty());
+		assertTrue(view.empty());
+		assertThrows(IllegalStateException.class, () -> {
+			MatScope scope = MatScope.open();
+			scope.close();
+			scope.newMat();
+		});
+	}
+
+	@Test
+	void locatorRecyclesScratchAcrossCalls() throws Exception {
+		BarcodeLocator locator = new BarcodeLocator();
+		locator.scratchPoolSize = 1;
+		Mat image = PDF417Samples.pdf417(PDF417Samples.PAYLOAD, 400, 120);
+		locator.locate(image);
+		long pooled = locator.pooledScratchBytes();
+		assertTrue(pooled > 0);
+		locator.locate(image);
+		// Same size, so the pooled set is reused rather than a second one created
+		assertEquals(pooled, locator.pooledScratchBytes());
+		image.release();
+	}
+}
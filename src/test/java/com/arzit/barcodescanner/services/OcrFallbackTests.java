@@ -0,0 +1,163 @@
+package com.arzit.barcodescanner.services;
+
+import nu.pattern.OpenCV;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Rect;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.arzit.barcodescanner.services.PDF417Samples.PAYLOAD;
+import static com.arzit.barcodescanner.services.PDF417Samples.onPage;
+import static com.arzit.barcodescanner.services.PDF417Samples.pdf417;
+import static com.arzit.barcodescanner.services.PDF417Samples.undecodablePage;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OcrFallbackTests {
+
+	private final AtomicInteger reads = new AtomicInteger();
+	private ScanFixture fixture;
+	private OcrFallback ocr;
+	private Mat page;
+	private Rect symbol;
+
+	@BeforeAll
+	static void loadOpenCV() {
+		OpenCV.loadLocally();
+	}
+
+	@BeforeEach
+	void setUp() {
+		// Names the zone it was given, so tests can tell the zones apart without Tesseract
+		fixture = new ScanFixture().enableOcr(() -> new OcrFallback.OcrEngine() {
+			@Override
+			public String read(Mat gray) {
+				reads.incrementAndGet();
+				return gray.cols() + "x" + gray.rows();
+			}
+
+			@Override
+			public void close() {
+			}
+		});
+		ocr = fixture.ocr;
+		Mat rendered = pdf417(PAYLOAD, 600, 200);
+		symbol = new Rect(rendered.cols() / 2, rendered.rows() * 3 / 2, rendered.cols(), rendered.rows());
+		page = onPage(rendered, 2, 4);
+		// The human-readable lines printed above and below the symbol
+		Imgproc.putText(page, "DL D1234562", new Point(symbol.x, symbol.y - 30), Imgproc.FONT_HERSHEY_SIMPLEX, 1, new Scalar(0), 2);
+		Imgproc.putText(page, "EXP 2030-01-01", new Point(symbol.x, symbol.y + symbol.height + 50), Imgproc.FONT_HERSHEY_SIMPLEX, 1, new Scalar(0), 2);
+	}
+
+	@AfterEach
+	void tearDown() {
+		page.release();
+		fixture.close();
+	}
+
+	@Test
+	void readsTheZonesAboveAndBelowTheSymbolOnce() {
+		String text = ocr.read(page, symbol, Deadline.none());
+		assertEquals(2, text.lines().count(), text);
+		assertEquals(2, reads.get());
+
+		assertEquals(text, ocr.read(page, symbol, Deadline.none()));
+		assertEquals(2, reads.get());
+		assertEquals(2, ocr.stats().cacheHits());
+	}
+
+	@Test
+	void readsNothingWithoutALocatedSymbol() {
+		assertNull(ocr.read(page, null, Deadline.none()));
+		assertEquals(0, reads.get());
+	}
+
+	@Test
+	void skipsTheReadWhenTheBudgetIsShorterThanOne() {
+		ocr.expectedMs = 10_000;
+
+		assertNull(ocr.read(page, symbol, Deadline.after(Duration.ofSeconds(5))));
+		assertEquals(0, reads.get());
+		assertTrue(ocr.stats().skippedBudget() > 0);
+	}
+
+	@Test
+	void skipsTheReadWhenEveryEngineIsBusy() throws Exception {
+		CountDownLatch reading = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		ocr.poolSize = 1;
+		ocr.maxWaitMs = 10;
+		fixture.enableOcr(() -> new OcrFallback.OcrEngine() {
+			@Override
+			public String read(Mat gray) {
+				reading.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return "TEXT";
+			}
+
+			@Override
+			public void close() {
+			}
+		});
+
+		CompletableFuture<String> first = CompletableFuture.supplyAsync(() -> ocr.read(page, symbol, Deadline.none()));
+		assertTrue(reading.await(10, TimeUnit.SECONDS));
+		assertNull(ocr.read(page, symbol, Deadline.none()));
+		assertEquals(1, ocr.stats().skippedBusy());
+
+		release.countDown();
+		assertEquals("TEXT\nTEXT", first.get(10, TimeUnit.SECONDS));
+	}
+
+	@Test
+	void clipsTheZonesToTheImage() {
+		List<Rect> zones = OcrFallback.zones(new Rect(10, 5, 100, 40), 200, 60, 0.5);
+
+		assertEquals(List.of(new Rect(10, 0, 100, 5), new Rect(10, 45, 100, 15)), zones);
+	}
+
+	@Test
+	void attachesTheTextToAScanWhoseSymbolDoesNotDecode() throws Exception {
+		Mat damaged = undecodablePage();
+
+		ScanResult result = fixture.scheduler.decode(damaged, Deadline.none());
+		assertNull(result.text());
+		assertEquals(ScanResult.NO_VALID_BARCODE, result.error());
+		assertTrue(result.ocrText() != null && !result.ocrText().isBlank(), String.valueOf(result));
+		damaged.release();
+	}
+
+	@Test
+	void doesNotCacheAFailureWhoseTextWasNotRead() throws Exception {
+		ocr.expectedMs = Long.MAX_VALUE;
+		PDF417ScanService scanService = fixture.scanService;
+		byte[] upload = PDF417Samples.encode(undecodablePage(), ".png");
+
+		ScanResult result = scanService.scan(upload);
+		assertEquals(ScanResult.NO_VALID_BARCODE, result.error());
+		assertNull(result.ocrText());
+		assertNull(scanService.decodeResultCache.get(scanService.decodeResultCache.contentKey(upload)));
+
+		// With the time for a read, the failure and its text are cached
+		ocr.expectedMs = 0;
+		assertTrue(scanService.scan(upload).ocrText() != null);
+		assertTrue(scanService.decodeResultCache.get(scanService.decodeResultCache.contentKey(upload)).ocrText() != null);
+	}
+}
@@ -0,0 +1,63 @@
+package com.arzit.barcodescanner.services;
+
+import nu.pattern.OpenCV;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Scalar;
+
+import static com.arzit.barcodescanner.services.PDF417Samples.PAYLOAD;
+import static com.arzit.barcodescanner.services.PDF417Samples.pdf417;
+import static com.arzit.barcodescanner.services.PDF417Samples.skewed;
+import static org.junit.jupiter.api.Assertions.*;
+
+class OrientationTests {
+
+	@BeforeAll
+	static void loadOpenCV() {
+		OpenCV.loadLocally();
+	}
+
+	@Test
+	void estimatesTheSkewOfTheBars() throws Exception {
+		Mat symbol = pdf417(PAYLOAD, 400, 160);
+		for (double degrees : new double[]{0, 7, -12, 25, -40, 63}) {
+			Mat rotated = skewed(symbol, degrees);
+			assertEquals(degrees, Orientation.estimateSkew(rotated), 1.0, "rotated by " + degrees);
+			rotated.release();
+		}
+		Mat quarter = new Mat();
+		Core.rotate(symbol, quarter, Core.ROTATE_90_CLOCKWISE);
+		assertEquals(90, Math.abs(Orientation.estimateSkew(quarter)), 1.0);
+		assertEquals(0, Orientation.estimateSkew(new Mat(50, 50, CvType.CV_8UC1, new Scalar(255))));
+	}
+
+	@Test
+	void straightenedSymbolsDecode() throws Exception {
+		PDF417Decoder decoder = new PDF417Decoder();
+		Mat rotated = skewed(pdf417(PAYLOAD, 400, 160), -18);
+		assertNull(decoder.decodePDF417(rotated));
+
+		Mat straightened = new Mat();
+		Orientation.straighten(rotated, Orientation.estimateSkew(rotated), straightened);
+		assertEquals(PAYLOAD, decoder.decodePDF417(straightened));
+	}
+
+	@Test
+	void rightAnglesAreLossless() throws Exception {
+		Mat symbol = pdf417(PAYLOAD, 400, 160);
+		Mat there = new Mat();
+		Mat back = new Mat();
+		Orientation.rotate(symbol, 90, there);
+		assertEquals(symbol.cols(), there.rows());
+		Orientation.rotate(there, -90, back);
+		assertEquals(0, Core.norm(symbol, back, Core.NORM_INF));
+
+		// The legacy helper now writes its result
+		Mat legacy = new Mat();
+		new PDF417Decoder().rotate90ACW(symbol, legacy);
+		assertEquals(0, Core.norm(there, legacy, Core.NORM_INF));
+	}
+}
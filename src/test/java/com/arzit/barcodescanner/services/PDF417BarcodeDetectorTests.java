@@ -0,0 +1,101 @@
+package com.arzit.barcodescanner.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+class PDF417BarcodeDetectorTests {
+
+	/**
+	 * The original per-pixel implementation: 5x5 dilation of white pixels, then projections.
+	 */
+	private static Rectangle reference(byte[] gray, int width, int height) {
+		int r = 2;
+		boolean[] white = new boolean[width * height];
+		for (int y = r; y < height - r; y++) {
+			for (int x = r; x < width - r; x++) {
+				for (int dy = -r; dy <= r && !white[y * width + x]; dy++) {
+					for (int dx = -r; dx <= r; dx++) {
+						if ((gray[(y + dy) * width + x + dx] & 0xFF) == 255) {
+							white[y * width + x] = true;
+							break;
+						}
+					}
+				}
+			}
+		}
+		int[] rows = new int[height];
+		int[] cols = new int[width];
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				if (white[y * width + x]) {
+					rows[y]++;
+					cols[x]++;
+				}
+			}
+		}
+		int minY = peak(rows, false), maxY = peak(rows, true), minX = peak(cols, false), maxX = peak(cols, true);
+		return minX < maxX && minY < maxY ? new Rectangle(minX, minY, maxX - minX, maxY - minY) : null;
+	}
+
+	private static int peak(int[] projection, boolean reverse) {
+		int max = 0;
+		int index = reverse ? projection.length - 1 : 0;
+		for (int i = reverse ? projection.length - 1 : 0; i != (reverse ? -1 : projection.length); i += reverse ? -1 : 1) {
+			if (projection[i] > max) {
+				max = projection[i];
+				index = i;
+			}
+		}
+		return index;
+	}
+
+	private static byte[] scene(int width, int height, long seed) {
+		Random random = new Random(seed);
+		byte[] gray = new byte[width * height];
+		for (int i = 0; i < gray.length; i++) {
+			gray[i] = (byte) (random.nextInt(100) < 3 ? 255 : random.nextInt(200));
+		}
+		// A block of bars with white gaps
+		for (int y = height / 3; y < height / 2; y++) {
+			for (int x = width / 4; x < 3 * width / 4; x++) {
+				gray[y * width + x] = (byte) ((x / 3) % 2 == 0 ? 255 : 0);
+			}
+		}
+		return gray;
+	}
+
+	@Test
+	void matchesOriginalAlgorithmOnSmallImage() {
+		byte[] gray = scene(120, 90, 1);
+
+		assertEquals(reference(gray, 120, 90), PDF417BarcodeDetector.detectPDF417Region(gray, 120, 90));
+	}
+
+	@Test
+	void matchesOriginalAlgorithmOnParallelPath() {
+		byte[] gray = scene(900, 700, 2);
+
+		assertEquals(reference(gray, 900, 700), PDF417BarcodeDetector.detectPDF417Region(gray, 900, 700));
+	}
+
+	@Test
+	void cropsFromBufferedImage() {
+		BufferedImage image = new BufferedImage(300, 200, BufferedImage.TYPE_BYTE_GRAY);
+		byte[] pixels = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+		System.arraycopy(scene(300, 200, 3), 0, pixels, 0, pixels.length);
+
+		BufferedImage region = PDF417BarcodeDetector.detectPDF417Region(image);
+
+		assertNotNull(region);
+		Rectangle expected = reference(pixels, 300, 200);
+		assertEquals(expected.width, region.getWidth());
+		assertEquals(expected.height, region.getHeight());
+	}
+}
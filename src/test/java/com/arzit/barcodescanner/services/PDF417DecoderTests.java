@@ -0,0 +1,120 @@
+package com.arzit.barcodescanner.services;
+
+import nu.pattern.OpenCV;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Rect;
+import org.opencv.core.Scalar;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.arzit.barcodescanner.services.PDF417Samples.PAYLOAD;
+import static com.arzit.barcodescanner.services.PDF417Samples.pdf417;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PDF417DecoderTests {
+
+	private PDF417Decoder decoder;
+
+	@BeforeAll
+	static void loadOpenCV() {
+		OpenCV.loadLocally();
+	}
+
+	@BeforeEach
+	void setUp() {
+		decoder = new PDF417Decoder();
+		decoder.threads = 2;
+		decoder.start();
+	}
+
+	@AfterEach
+	void tearDown() {
+		decoder.stop();
+	}
+
+	@Test
+	void decodeFirstFindsTheReadableCandidate() throws Exception {
+		Mat blank = new Mat(200, 500, CvType.CV_8UC1, new Scalar(255));
+		String decoded = decoder.decodeFirst(List.of(blank, blank, pdf417(PAYLOAD, 400, 160)));
+
+		assertEquals(PAYLOAD, decoded);
+	}
+
+	@Test
+	void decodeFirstReturnsNullWhenNothingDecodes() {
+		Mat blank = new Mat(200, 500, CvType.CV_8UC1, new Scalar(255));
+
+		assertNull(decoder.decodeFirst(List.of(blank)));
+	}
+
+	@Test
+	void decodeAllReturnsEverySymbolWithItsBox() throws Exception {
+		Mat page = new Mat(900, 1200, CvType.CV_8UC1, new Scalar(255));
+		String[] texts = {"first symbol", "second symbol", "third symbol"};
+		Rect[] placed = new Rect[texts.length];
+		for (int i = 0; i < texts.length; i++) {
+			Mat symbol = pdf417(texts[i], 400, 160);
+			placed[i] = new Rect(100 + i * 300, 80 + i * 260, symbol.cols(), symbol.rows());
+			symbol.copyTo(page.submat(placed[i]));
+		}
+		List<Mat> regions = new ArrayList<>(List.of(page));
+		for (Rect box : placed) {
+			// Overlapping crops of the page, as the locator returns them
+			regions.add(page.submat(new Rect(box.x - 50, box.y - 40, box.width + 100, box.height + 80)));
+		}
+
+		List<DecodedSymbol> symbols = DecodedSymbol.distinct(decoder.decodeAll(regions, Deadline.none()));
+
+		assertEquals(List.of(texts), symbols.stream().map(DecodedSymbol::text).toList());
+		for (int i = 0; i < texts.length; i++) {
+			// The box is the symbol itself, inside the quiet zone the writer adds
+			DecodedSymbol symbol = symbols.get(i);
+			Rect box = new Rect(symbol.x(), symbol.y(), symbol.width(), symbol.height());
+			assertTrue(placed[i].contains(box.tl()) && placed[i].contains(new Point(box.br().x - 1, box.br().y - 1)),
+					symbol + " outside " + placed[i]);
+			assertTrue(box.width > placed[i].width / 2, symbol + " too small");
+		}
+	}
+
+	@Test
+	void distinctKeepsRepeatedSymbolsAtDifferentPositions() {
+		List<DecodedSymbol> symbols = DecodedSymbol.distinct(List.of(
+				new DecodedSymbol("a", 500, 100, 200, 80),
+				new DecodedSymbol("a", 505, 102, 198, 78),
+				new DecodedSymbol("a", 10, 100, 200, 80),
+				new DecodedSymbol("b", 500, 100, 200, 80)));
+
+		assertEquals(List.of(new DecodedSymbol("a", 10, 100, 200, 80), new DecodedSymbol("a", 500, 100, 200, 80),
+				new DecodedSymbol("b", 500, 100, 200, 80)), symbols);
+	}
+
+	@Test
+	void firstSuccessCancelsOutstandingAttempts() {
+		CountDownLatch never = new CountDownLatch(1);
+		AtomicInteger started = new AtomicInteger();
+		List<Callable<String>> attempts = new ArrayList<>();
+		attempts.add(() -> "found");
+		for (int i = 0; i < 20; i++) {
+			attempts.add(() -> {
+				started.incrementAndGet();
+				never.await();
+				return null;
+			});
+		}
+
+		assertEquals("found", decoder.firstSuccess(attempts));
+		assertTrue(started.get() < 20);
+	}
+}
@@ -0,0 +1,72 @@
+package com.arzit.barcodescanner.services;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.core.Point;
+import org.opencv.core.Rect;
+import org.opencv.core.Scalar;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * PDF417 test images built around {@link PDF417Symbols}, so tests need no image fixtures.
+ */
+final class PDF417Samples {
+
+	static final String PAYLOAD = "ANSI 636014040002DL00410288ZC03290015DLDAQD1234562";
+
+	private PDF417Samples() {
+	}
+
+	static Mat pdf417(String text, int width, int height) {
+		return PDF417Symbols.render(text, width, height);
+	}
+
+	/**
+	 * The symbol centred on a white page {@code widthFactor} by {@code heightFactor} times its size.
+	 * The symbol is released.
+	 */
+	static Mat onPage(Mat symbol, int widthFactor, int heightFactor) {
+		int cols = symbol.cols();
+		int rows = symbol.rows();
+		Mat page = new Mat(rows * heightFactor, cols * widthFactor, CvType.CV_8UC1, new Scalar(255));
+		symbol.copyTo(page.submat(new Rect(cols * (widthFactor - 1) / 2, rows * (heightFactor - 1) / 2, cols, rows)));
+		symbol.release();
+		return page;
+	}
+
+	/**
+	 * A page with room above and below a symbol that lost its start and stop patterns: the data
+	 * columns are still located, no longer decodable.
+	 */
+	static Mat undecodablePage() {
+		Mat symbol = pdf417(PAYLOAD, 600, 200);
+		int cols = symbol.cols();
+		symbol.submat(new Rect(0, 0, cols / 5, symbol.rows())).setTo(new Scalar(255));
+		symbol.submat(new Rect(cols - cols / 5, 0, cols / 5, symbol.rows())).setTo(new Scalar(255));
+		return onPage(symbol, 2, 4);
+	}
+
+	/**
+	 * The symbol rotated counter-clockwise by {@code degrees} on a white canvas with room for the corners.
+	 */
+	static Mat skewed(Mat symbol, double degrees) {
+		int pad = Math.max(symbol.cols(), symbol.rows()) / 2;
+		Mat canvas = new Mat();
+		Core.copyMakeBorder(symbol, canvas, pad, pad, pad, pad, Core.BORDER_CONSTANT, new Scalar(255));
+		Mat matrix = Imgproc.getRotationMatrix2D(new Point(canvas.cols() / 2.0, canvas.rows() / 2.0), degrees, 1);
+		Mat rotated = new Mat();
+		Imgproc.warpAffine(canvas, rotated, matrix, canvas.size(), Imgproc.INTER_LINEAR, Core.BORDER_CONSTANT, new Scalar(255));
+		canvas.release();
+		matrix.release();
+		return rotated;
+	}
+
+	static byte[] encode(Mat mat, String extension) {
+		MatOfByte encoded = new MatOfByte();
+		Imgcodecs.imencode(extension, mat, encoded);
+		return encoded.toArray();
+	}
+}
@@ -0,0 +1,75 @@
+package com.arzit.barcodescanner.services;
+
+import com.arzit.barcodescanner.metrics.ScanMetrics;
+
+import java.util.function.Supplier;
+
+/**
+ * The scan services wired as Spring wires them, over a started two-thread decoder and a disabled
+ * OCR fallback. Tests close it in {@code @AfterEach}, so the decoder's threads are stopped even when
+ * an assertion fails.
+ */
+final class ScanFixture implements AutoCloseable {
+
+	final ScanMetrics metrics;
+	final BarcodeLocator locator = new BarcodeLocator();
+	final PDF417Decoder decoder = new PDF417Decoder();
+	final OcrFallback ocr = new OcrFallback();
+	final DecodeStrategyScheduler scheduler = new DecodeStrategyScheduler();
+	final ImageIngestionService ingestion = new ImageIngestionService();
+	final DecodeResultCache cache = new DecodeResultCache();
+	final TiledImageScanner tiled = new TiledImageScanner();
+	final PDF417ScanService scanService = new PDF417ScanService();
+
+	ScanFixture() {
+		this(ScanMetrics.noop());
+	}
+
+	ScanFixture(ScanMetrics metrics) {
+		this.metrics = metrics;
+		locator.scanMetrics = metrics;
+		ingestion.scanMetrics = metrics;
+
+		decoder.scanMetrics = metrics;
+		decoder.threads = 2;
+		decoder.start();
+
+		ocr.scanMetrics = metrics;
+
+		scheduler.pdf417Decoder = decoder;
+		scheduler.barcodeLocator = locator;
+		scheduler.ocrFallback = ocr;
+		scheduler.start();
+
+		tiled.barcodeLocator = locator;
+		tiled.decodeStrategyScheduler = scheduler;
+		tiled.scanMetrics = metrics;
+		tiled.start();
+
+		scanService.decodeStrategyScheduler = scheduler;
+		scanService.imageIngestionService = ingestion;
+		scanService.decodeResultCache = cache;
+		scanService.tiledImageScanner = tiled;
+		scanService.barcodeLocator = locator;
+		scanService.pdf417Decoder = decoder;
+		scanService.ocrFallback = ocr;
+		scanService.scanMetrics = metrics;
+	}
+
+	/**
+	 * Enables the OCR fallback over {@code engines} instead of Tesseract.
+	 */
+	ScanFixture enableOcr(Supplier<OcrFallback.OcrEngine> engines) {
+		ocr.stop();
+		ocr.enabled = true;
+		ocr.engines = engines;
+		ocr.start();
+		return this;
+	}
+
+	@Override
+	public void close() {
+		ocr.stop();
+		decoder.stop();
+	}
+}
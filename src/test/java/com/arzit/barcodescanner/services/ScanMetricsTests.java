@@ -0,0 +1,76 @@
+package com.arzit.barcodescanner.services;
+
+import com.arzit.barcodescanner.metrics.ScanMetrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.observation.DefaultMeterObservationHandler;
+import io.micrometer.core.instrument.search.RequiredSearch;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import nu.pattern.OpenCV;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Scalar;
+
+import java.util.List;
+
+import static com.arzit.barcodescanner.services.PDF417Samples.PAYLOAD;
+import static com.arzit.barcodescanner.services.PDF417Samples.encode;
+import static com.arzit.barcodescanner.services.PDF417Samples.pdf417;
+import static com.arzit.barcodescanner.services.PDF417Samples.skewed;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ScanMetricsTests {
+
+	private MeterRegistry meters;
+	private ScanFixture fixture;
+
+	@BeforeAll
+	static void loadOpenCV() {
+		OpenCV.loadLocally();
+	}
+
+	@BeforeEach
+	void setUp() {
+		meters = new SimpleMeterRegistry();
+		ObservationRegistry observations = ObservationRegistry.create();
+		observations.observationConfig().observationHandler(new DefaultMeterObservationHandler(meters));
+		fixture = new ScanFixture(ScanMetrics.of(observations, meters));
+	}
+
+	@AfterEach
+	void tearDown() {
+		fixture.close();
+	}
+
+	@Test
+	void attributesDecodesToTheirPath() throws Exception {
+		Mat blank = new Mat(200, 200, CvType.CV_8UC1, new Scalar(255));
+		Mat skewed = skewed(pdf417(PAYLOAD, 400, 160), 15);
+		assertEquals(PAYLOAD, fixture.decoder.decodeSequentially(List.of(blank, skewed)));
+
+		// The blank region has no orientation, so it gets no deskewed attempt
+		assertEquals(2, stage("decode", ScanMetrics.CANDIDATE, ScanMetrics.FAILURE).timer().count());
+		assertEquals(1, stage("decode", ScanMetrics.DESKEWED, ScanMetrics.SUCCESS).timer().count());
+		assertEquals(1, stage("rotate", "none", ScanMetrics.SUCCESS).timer().count());
+	}
+
+	@Test
+	void recordsScanOutcomeAndImageSize() throws Exception {
+		assertEquals(PAYLOAD, fixture.scanService.scan(encode(pdf417(PAYLOAD, 400, 160), ".png")).text());
+
+		assertEquals(1, meters.get("barcode.scan").tags("endpoint", "single", "outcome", "decoded").timer().count());
+		assertEquals(1, stage("ingest", "none", ScanMetrics.SUCCESS).timer().count());
+		assertEquals(1, stage("decode", ScanMetrics.FULL_FRAME, ScanMetrics.SUCCESS).timer().count());
+		assertEquals(1, meters.get("barcode.image.pixels").summary().count());
+		assertEquals(0, meters.get("barcode.scan.in.flight").gauge().value());
+	}
+
+	private RequiredSearch stage(String stage, String path, String outcome) {
+		return meters.get("barcode.stage").tags("stage", stage, "path", path, "outcome", outcome);
+	}
+}
@@ -0,0 +1,78 @@
+package com.arzit.barcodescanner.services;
+
+import com.arzit.barcodescanner.metrics.ScanMetrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.observation.DefaultMeterObservationHandler;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import nu.pattern.OpenCV;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static com.arzit.barcodescanner.services.PDF417Samples.PAYLOAD;
+import static com.arzit.barcodescanner.services.PDF417Samples.encode;
+import static com.arzit.barcodescanner.services.PDF417Samples.pdf417;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ScanWarmupTests {
+
+	private MeterRegistry meters;
+	private ScanFixture fixture;
+	private ScanWarmup warmup;
+
+	@BeforeAll
+	static void loadOpenCV() {
+		OpenCV.loadLocally();
+	}
+
+	@BeforeEach
+	void setUp() {
+		meters = new SimpleMeterRegistry();
+		ObservationRegistry observations = ObservationRegistry.create();
+		observations.observationConfig().observationHandler(new DefaultMeterObservationHandler(meters));
+		fixture = new ScanFixture(ScanMetrics.of(observations, meters));
+		warmup = new ScanWarmup();
+		warmup.imageIngestionService = fixture.ingestion;
+		warmup.pdf417ScanService = fixture.scanService;
+		warmup.decodeStrategyScheduler = fixture.scheduler;
+		warmup.scanMetrics = fixture.metrics;
+	}
+
+	@AfterEach
+	void tearDown() {
+		fixture.close();
+	}
+
+	@Test
+	void everyGeneratedSampleDecodes() {
+		assertEquals(0, warmup.pass(ScanWarmup.samples()));
+	}
+
+	@Test
+	void forgetsTheStatisticsOfTheSamples() {
+		warmup.iterations = 2;
+
+		warmup.run(null);
+
+		warmup.decodeStrategyScheduler.stats()
+				.forEach(stats -> assertEquals(0, stats.attempts(), stats.name()));
+	}
+
+	@Test
+	void keepsTheSamplesOutOfTheScanMetrics() {
+		warmup.iterations = 1;
+
+		warmup.run(null);
+
+		assertTrue(meters.find("barcode.scan").timers().isEmpty());
+		assertTrue(meters.find("barcode.stage").timers().isEmpty());
+		assertEquals(0, meters.get("barcode.image.pixels").summary().count());
+		// Scans after the warm-up are recorded again
+		assertEquals(PAYLOAD, fixture.scanService.scan(encode(pdf417(PAYLOAD, 400, 160), ".png")).text());
+		assertEquals(1, meters.get("barcode.scan").timer().count());
+	}
+}
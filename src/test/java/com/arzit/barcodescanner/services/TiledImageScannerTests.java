@@ -0,0 +1,124 @@
+package com.arzit.barcodescanner.services;
+
+import nu.pattern.OpenCV;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static com.arzit.barcodescanner.services.PDF417Samples.PAYLOAD;
+import static com.arzit.barcodescanner.services.PDF417Samples.encode;
+import static com.arzit.barcodescanner.services.PDF417Samples.pdf417;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TiledImageScannerTests {
+
+	private ScanFixture fixture;
+	private TiledImageScanner scanner;
+
+	@BeforeAll
+	static void loadOpenCV() {
+		OpenCV.loadLocally();
+	}
+
+	@BeforeEach
+	void setUp() {
+		fixture = new ScanFixture();
+		scanner = fixture.tiled;
+		scanner.tilePixels = 4_000_000;
+	}
+
+	@AfterEach
+	void tearDown() {
+		fixture.close();
+	}
+
+	@Test
+	void decodesSymbolOfAnImageLargerThanOneRead() throws Exception {
+		Mat page = new Mat(4000, 6000, CvType.CV_8UC1, new Scalar(255));
+		Mat symbol = pdf417(PAYLOAD, 1200, 480);
+		symbol.copyTo(page.submat(new Rect(3600, 2800, symbol.cols(), symbol.rows())));
+		Mat color = new Mat();
+		Imgproc.cvtColor(page, color, Imgproc.COLOR_GRAY2BGR);
+
+		ScanResult result = scanner.scan(encode(color, ".png"), Deadline.none());
+
+		assertEquals(PAYLOAD, result.text());
+		assertEquals(0, scanner.reservedBytes());
+	}
+
+	@Test
+	void blankImageHasNoBarcode() {
+		Mat page = new Mat(3000, 5000, CvType.CV_8UC1, new Scalar(255));
+
+		assertEquals(ScanResult.NO_BARCODE, scanner.scan(encode(page, ".png"), Deadline.none()).error());
+	}
+
+	@Test
+	void spendsOneTimeBudgetOnAllTiles() throws Exception {
+		List<Deadline> deadlines = new ArrayList<>();
+		DecodeStrategyScheduler recording = new DecodeStrategyScheduler() {
+			@Override
+			public ScanResult decode(Mat image, Deadline deadline) {
+				deadlines.add(deadline);
+				return ScanResult.failed(ScanResult.NO_VALID_BARCODE);
+			}
+		};
+		recording.budgetMs = 60_000;
+		scanner.decodeStrategyScheduler = recording;
+		Mat page = new Mat(4000, 6000, CvType.CV_8UC1, new Scalar(255));
+		Mat symbol = pdf417(PAYLOAD, 1200, 480);
+		symbol.copyTo(page.submat(new Rect(600, 600, symbol.cols(), symbol.rows())));
+		symbol.copyTo(page.submat(new Rect(3600, 2800, symbol.cols(), symbol.rows())));
+
+		assertEquals(ScanResult.NO_VALID_BARCODE, scanner.scan(encode(page, ".png"), Deadline.none()).error());
+
+		assertTrue(deadlines.size() > 1, deadlines.toString());
+		assertFalse(deadlines.get(0).isNone());
+		assertEquals(Set.of(deadlines.get(0)), Set.copyOf(deadlines));
+	}
+
+	@Test
+	void givesUpWaitingForMemoryAfterTheMaxWait() throws Exception {
+		scanner.maxWaitMs = 50;
+		byte[] upload = encode(new Mat(3000, 5000, CvType.CV_8UC1, new Scalar(255)), ".png");
+
+		try (TiledImageScanner.Reservation held = scanner.reserveUpload(scanner.memoryBytes - 1024, Deadline.none())) {
+			assertNotNull(held);
+			assertEquals(ScanResult.DEADLINE_EXCEEDED, scanner.scan(upload, Deadline.none()).error());
+		}
+		assertEquals(0, scanner.reservedBytes());
+	}
+
+	@Test
+	void refusesUploadsThatLeaveNoRoomForARead() {
+		assertThrows(ImageRejectedException.class, () -> scanner.reserveUpload(scanner.memoryBytes, Deadline.none()));
+	}
+
+	@Test
+	void subsamplingKeepsEveryReadWithinTheCap() {
+		for (long[] size : new long[][]{{100_000, 50_000}, {6000, 4000}, {4001, 3999}, {1, 70_000}}) {
+			long cap = 4_000_000;
+			int step = TiledImageScanner.subsampling(size[0], size[1], cap);
+			assertTrue(pixels(size, step) <= cap);
+			assertTrue(step == 1 || pixels(size, step - 1) > cap);
+		}
+	}
+
+	private static long pixels(long[] size, int step) {
+		return ((size[0] + step - 1) / step) * ((size[1] + step - 1) / step);
+	}
+}